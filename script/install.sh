@@ -112,6 +112,11 @@ install_system_packages() {
     local DEBIAN_PKGS=(maven imagemagick advancecomp gifsicle optipng pngquant libjpeg-progs webp)
     local RHEL_PKGS=(maven ImageMagick advancecomp gifsicle optipng pngquant libjpeg-turbo-utils libwebp-tools)
     local MACOS_PKGS=(maven imagemagick advancecomp gifsicle optipng pngquant jpeg webp)
+    # Optional encoders. Older distros do not package them so a failure to
+    # install them is not fatal.
+    local DEBIAN_OPTIONAL_PKGS=(libavif-bin libjxl-tools nodejs npm)
+    local RHEL_OPTIONAL_PKGS=(libavif-tools libjxl-utils nodejs)
+    local MACOS_OPTIONAL_PKGS=(libavif jpeg-xl node)
 
     # Add Java if missing or too old
     if ! check_java_version; then
@@ -125,9 +130,11 @@ install_system_packages() {
         if command -v apt-get &> /dev/null; then
             log_info "Detected Debian/Ubuntu..."
             sudo apt-get update && sudo apt-get install -y "${DEBIAN_PKGS[@]}"
+            sudo apt-get install -y "${DEBIAN_OPTIONAL_PKGS[@]}" || log_info "Optional packages not installed: ${DEBIAN_OPTIONAL_PKGS[*]}"
         elif command -v dnf &> /dev/null; then
             log_info "Detected Fedora/RHEL..."
             sudo dnf install -y "${RHEL_PKGS[@]}"
+            sudo dnf install -y "${RHEL_OPTIONAL_PKGS[@]}" || log_info "Optional packages not installed: ${RHEL_OPTIONAL_PKGS[*]}"
         else
             log_error "Unsupported Linux distro. Manual install required."
             exit 1
@@ -144,6 +151,7 @@ install_system_packages() {
             log_error "Homebrew installation failed. Please check the errors above."
             exit 1
         fi
+        brew install "${MACOS_OPTIONAL_PKGS[@]}" || log_info "Optional packages not installed: ${MACOS_OPTIONAL_PKGS[*]}"
         hash -r
 
         # Fix: Register Homebrew Java 17 (Keg-Only) if needed
@@ -232,6 +240,33 @@ install_app() {
         fi
     done
 
+    # Optional binaries only used when their conversion is turned on.
+    local optional_bins=(avifenc cjxl djxl node)
+    for tool in "${optional_bins[@]}"; do
+        local path=$(command -v "$tool" || true)
+        if [ -n "$path" ]; then
+            ln -sf "$path" "$bin_dir/$tool"
+        else
+            log_info "Optional binary not found, skipping: $tool"
+        fi
+    done
+
+    # The svgo webjar only contains svgo itself. Its node dependencies are
+    # installed next to the binaries, where the svgo engines look for them.
+    if [ -e "$bin_dir/node" ]; then
+        local svgo_version
+        svgo_version=$(grep -A1 '<artifactId>svgo</artifactId>' pom.xml | sed -n 's/.*<version>\([0-9.]*\).*/\1/p')
+        if command -v npm &> /dev/null && [ -n "$svgo_version" ]; then
+            log_info "Installing the node dependencies of svgo $svgo_version..."
+            if ! npm install --prefix "$bin_dir" --no-save --no-package-lock --omit=dev "svgo@$svgo_version"; then
+                log_error "Failed to install the node dependencies of svgo"
+                exit 1
+            fi
+        else
+            log_info "npm not found, SVG images will not be optimized."
+        fi
+    fi
+
     # 5. Custom Tools (PNGOUT/JFIFREMOVE)
     if [[ "$OSTYPE" == "darwin"* ]]; then
         brew tap jonof/kenutils 2>/dev/null || true
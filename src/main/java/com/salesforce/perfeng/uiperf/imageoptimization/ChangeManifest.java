@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.HashUtils;
+
+/**
+ * <p>Remembers the images {@link Main} already processed so an incremental run
+ * only optimizes the new or changed ones. For each image it records the path,
+ * size, last modified time, SHA-256 of the content and the outcome of the last
+ * run.</p>
+ * <p>An image is unchanged when its size and last modified time match the
+ * recorded values, which does not require reading the file. When only the last
+ * modified time differs, for example after a fresh checkout, the content hash
+ * decides.</p>
+ * <p>The manifest is a tab separated text file. It is written to a temp file
+ * and moved in place so an interrupted run leaves the previous manifest
+ * intact.</p>
+ *
+ * @since 2.0.2
+ */
+public final class ChangeManifest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeManifest.class);
+
+    private static final String HEADER = "#ImageOptimization change manifest v1\tpath\tsize\tlastModified\tsha256\toutcome";
+
+    /**
+     * The outcome of the last time an image was processed.
+     */
+    public enum Outcome {
+        /**
+         * At least one optimized version of the image was created.
+         */
+        OPTIMIZED,
+        /**
+         * Every stage ran successfully but none could make the image any
+         * smaller. Images that failed to optimize are not recorded.
+         */
+        NO_SAVINGS
+    }
+
+    private final File manifestFile;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private ChangeManifest(final File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Loads the manifest. A missing or unreadable manifest results in an empty
+     * manifest, so every image is processed.
+     *
+     * @param manifestFile The manifest to load.
+     * @return The loaded {@link ChangeManifest}.
+     * @throws IOException Thrown if the path of the manifest can not be
+     *                     resolved.
+     */
+    public static ChangeManifest load(final File manifestFile) throws IOException {
+        final ChangeManifest manifest = new ChangeManifest(manifestFile.getCanonicalFile());
+        if (!manifestFile.isFile()) {
+            return manifest;
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || (line.charAt(0) == '#')) {
+                    continue;
+                }
+                final String[] columns = line.split("\t", -1);
+                if (columns.length != 5) {
+                    logger.warn("Ignoring malformed line in the change manifest {}: {}", manifestFile, line);
+                    continue;
+                }
+                try {
+                    manifest.entries.put(columns[0], new Entry(Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[3], Outcome.valueOf(columns[4])));
+                } catch (final IllegalArgumentException iae) {
+                    logger.warn("Ignoring malformed line in the change manifest {}: {}", manifestFile, line);
+                }
+            }
+        } catch (final IOException ioe) {
+            logger.warn("Unable to read the change manifest " + manifestFile + ". Processing every image.", ioe);
+            manifest.entries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * @param image The image to check.
+     * @return <code>true</code> if the image was already processed and has not
+     *         changed since.
+     * @throws IOException Thrown if the image can not be read.
+     */
+    public boolean isUnchanged(final File image) throws IOException {
+        final String path = image.getCanonicalPath();
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+        }
+        if ((entry == null) || (entry.size != image.length())) {
+            return false;
+        }
+        final long lastModified = image.lastModified();
+        if (entry.lastModified == lastModified) {
+            return true;
+        }
+        if (!entry.sha256.equals(HashUtils.sha256Hex(image))) {
+            return false;
+        }
+        synchronized (entries) {
+            entries.put(path, new Entry(entry.size, lastModified, entry.sha256, entry.outcome));
+        }
+        return true;
+    }
+
+    /**
+     * @param image The image to look up.
+     * @return The outcome of the last time the image was processed or
+     *         <code>null</code> if it was never processed.
+     * @throws IOException Thrown if the path of the image can not be resolved.
+     */
+    public Outcome getOutcome(final File image) throws IOException {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(image.getCanonicalPath());
+        }
+        return (entry == null) ? null : entry.outcome;
+    }
+
+    /**
+     * Records the outcome of processing the passed in image.
+     *
+     * @param image The processed image.
+     * @param outcome The outcome.
+     * @throws IOException Thrown if the image can not be read.
+     */
+    public void record(final File image, final Outcome outcome) throws IOException {
+        final String path = image.getCanonicalPath();
+        if ((path.indexOf('\t') >= 0) || (path.indexOf('\n') >= 0) || (path.indexOf('\r') >= 0)) {
+            logger.debug("Not recording {} in the change manifest because its path contains a tab or line break.", path);
+            return;
+        }
+        final Entry entry = new Entry(image.length(), image.lastModified(), HashUtils.sha256Hex(image), outcome);
+        synchronized (entries) {
+            entries.put(path, entry);
+        }
+    }
+
+    /**
+     * Writes the manifest, dropping the entries of images that no longer
+     * exist.
+     *
+     * @throws IOException Thrown if the manifest can not be written.
+     */
+    public void write() throws IOException {
+        final Path manifestPath = manifestFile.toPath();
+        final Path directory = manifestPath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path tmpPath = Files.createTempFile(directory, manifestFile.getName(), ".tmp");
+        try {
+            try (final Writer writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.write('\n');
+                synchronized (entries) {
+                    for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                        if (!new File(e.getKey()).isFile()) {
+                            continue;
+                        }
+                        final Entry entry = e.getValue();
+                        writer.write(e.getKey() + '\t' + entry.size + '\t' + entry.lastModified + '\t' + entry.sha256 + '\t' + entry.outcome + '\n');
+                    }
+                }
+            }
+            try {
+                Files.move(tmpPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException amnse) {
+                Files.move(tmpPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final String sha256;
+        final Outcome outcome;
+
+        Entry(final long size, final long lastModified, final String sha256, final Outcome outcome) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.outcome = outcome;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService;
+
+/**
+ * <p>Asks the local <code>git</code> binary which images changed so only those
+ * are optimized, instead of scanning the whole tree.</p>
+ * <p>The revisions are given as "<i>from</i>..<i>to</i>" to get the images
+ * that were added, copied, modified or renamed between two commits, or as
+ * "<i>from</i>" to compare the working tree, including untracked files that
+ * are not ignored, against a commit.</p>
+ *
+ * @since 2.0.2
+ */
+public final class GitChangeScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitChangeScanner.class);
+
+    /**
+     * Name of the binary application used to find the changed images.
+     */
+    static final String GIT_BINARY = "git";
+
+    private static final Set<String> EXTENSIONS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        EXTENSIONS.addAll(Arrays.asList(IImageOptimizationService.SUPPORTED_FILE_EXTENSIONS));
+    }
+
+    private final String fromRevision;
+    private final String toRevision;
+
+    /**
+     * @param revisions Either "<i>from</i>..<i>to</i>" or "<i>from</i>".
+     */
+    public GitChangeScanner(final String revisions) {
+        if ((revisions == null) || revisions.isEmpty()) {
+            throw new IllegalArgumentException("The revisions can not be empty.");
+        }
+        final int index = revisions.indexOf("..");
+        if (index < 0) {
+            fromRevision = revisions;
+            toRevision = null;
+        } else {
+            fromRevision = revisions.substring(0, index);
+            toRevision = revisions.substring(index + 2);
+            if (fromRevision.isEmpty() || toRevision.isEmpty() || toRevision.startsWith(".")) {
+                throw new IllegalArgumentException("The revisions \"" + revisions + "\" need to be in the format <from>..<to> or <from>.");
+            }
+        }
+        // Otherwise git would read the revision as an option.
+        for (final String revision : new String[] {fromRevision, toRevision}) {
+            if ((revision != null) && revision.startsWith("-")) {
+                throw new IllegalArgumentException("The revision \"" + revision + "\" can not start with '-'.");
+            }
+        }
+    }
+
+    /**
+     * Finds the images under the passed in directory that changed.
+     *
+     * @param directory A directory inside of a git working tree.
+     * @return The changed images that still exist.
+     * @throws IOException Thrown if git fails.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if git can not be run.
+     */
+    public Collection<File> getChangedImages(final File directory) throws IOException, ThirdPartyBinaryNotFoundException {
+        final File canonicalDirectory = directory.getCanonicalFile();
+        final File topLevel = new File(git(canonicalDirectory, "rev-parse", "--show-toplevel").trim()).getCanonicalFile();
+        final String pathspec = topLevel.toPath().relativize(canonicalDirectory.toPath()).toString();
+
+        final List<String> paths = new ArrayList<>();
+        if (toRevision == null) {
+            paths.addAll(split(git(topLevel, "diff", "--name-only", "-z", "--no-renames", "--diff-filter=ACMR", fromRevision, "--", pathspec.isEmpty() ? "." : pathspec)));
+            paths.addAll(split(git(topLevel, "ls-files", "--others", "--exclude-standard", "-z", "--", pathspec.isEmpty() ? "." : pathspec)));
+        } else {
+            paths.addAll(split(git(topLevel, "diff", "--name-only", "-z", "--no-renames", "--diff-filter=ACMR", fromRevision, toRevision, "--", pathspec.isEmpty() ? "." : pathspec)));
+        }
+
+        final Set<File> images = new TreeSet<>();
+        for (final String path : paths) {
+            if (!EXTENSIONS.contains(FilenameUtils.getExtension(path))) {
+                continue;
+            }
+            final File image = new File(topLevel, path);
+            if (image.isFile()) {
+                images.add(image);
+            }
+        }
+        logger.info("git reports {} changed images under {}.", Integer.valueOf(images.size()), canonicalDirectory);
+        return images;
+    }
+
+    private static List<String> split(final String output) {
+        final List<String> paths = new ArrayList<>();
+        for (final String path : output.split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Runs git and returns its standard output.
+     */
+    private static String git(final File workingDirectory, final String... args) throws IOException, ThirdPartyBinaryNotFoundException {
+        final List<String> command = new ArrayList<>(args.length + 3);
+        command.add(GIT_BINARY);
+        command.add("-C");
+        command.add(workingDirectory.getPath());
+        command.addAll(Arrays.asList(args));
+
+        final File errorFile = File.createTempFile("git", ".err");
+        try {
+            final Process ps;
+            try {
+                ps = new ProcessBuilder(command).redirectError(errorFile).start();
+            } catch (final IOException ioe) {
+                throw new ThirdPartyBinaryNotFoundException(GIT_BINARY, "git is needed to find the changed images.", ioe);
+            }
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (final InputStream is = ps.getInputStream()) {
+                IOUtils.copy(is, output);
+            }
+            final int exitCode;
+            try {
+                exitCode = ps.waitFor();
+            } catch (final InterruptedException ie) {
+                ps.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for git.", ie);
+            }
+            if (exitCode != 0) {
+                throw new IOException("\"" + String.join(" ", command) + "\" failed with exit code " + exitCode + ". " + new String(Files.readAllBytes(errorFile.toPath()), StandardCharsets.UTF_8).trim());
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            errorFile.delete();
+        }
+    }
+}
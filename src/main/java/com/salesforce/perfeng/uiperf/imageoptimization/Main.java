@@ -35,16 +35,15 @@ import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOpti
 import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.JPEG_MIME_TYPE;
 import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.PNG_EXTENSION;
 import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.PNG_MIME_TYPE;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.SVG_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.SVG_MIME_TYPE;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -56,10 +55,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.salesforce.perfeng.uiperf.imageoptimization.dto.OptimizationResult;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.VerificationPolicy;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.FileTypeConversion;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.ImageOptimizationService;
+import com.salesforce.perfeng.uiperf.imageoptimization.service.OptimizationCache;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageProbe;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.PngColorReducer.TransparentPixels;
 
 /**
  * Class to run the image optimization against a specified directory. Used
@@ -87,6 +90,12 @@ public class Main {
 
     private final static Logger logger = LoggerFactory.getLogger(Main.class);
 
+    /**
+     * The maximum size of the optimization cache, 1 GB, when
+     * "-DoptimizationCacheMaxSize" is not set.
+     */
+    private final static long DEFAULT_OPTIMIZATION_CACHE_MAX_SIZE = FileUtils.ONE_GB;
+
     /**
      * Optimizes all of the images that are passed in.
      *
@@ -106,6 +115,11 @@ public class Main {
             return;
         }
 
+        final String manifestPath = System.getProperty("incrementalManifest");
+        final ChangeManifest manifest = ((manifestPath == null) || manifestPath.isEmpty()) ? null : ChangeManifest.load(new File(manifestPath));
+        final String gitRevisions = System.getProperty("gitRevisions");
+        final GitChangeScanner gitChangeScanner = ((gitRevisions == null) || gitRevisions.isEmpty()) ? null : new GitChangeScanner(gitRevisions);
+
         final Set<File> imagesToOptimize = new TreeSet<>();
         File file;
         for (final String path : args) {
@@ -114,14 +128,36 @@ public class Main {
                 throw new IllegalArgumentException("The file \"" + path + "\" does not exist.");
             }
             if (file.isFile()) {
-                imagesToOptimize.add(file);
+                if ((manifest == null) || !manifest.isUnchanged(file)) {
+                    imagesToOptimize.add(file);
+                }
             } else {
-                imagesToOptimize.addAll(getAllImages(path));
+                imagesToOptimize.addAll(getAllImages(manifest, gitChangeScanner, path));
             }
         }
 
-        final IImageOptimizationService<Void> service = ImageOptimizationService.createInstance(IMAGE_OPTIMIZATION_BINARY_LOCATION, 0);
-        final List<OptimizationResult<Void>> list = service.optimizeAllImages(FileTypeConversion.NONE, false, imagesToOptimize);
+        final ImageOptimizationService<Void> service = ImageOptimizationService.createInstance(IMAGE_OPTIMIZATION_BINARY_LOCATION, 0);
+        final String cacheDirectory = System.getProperty("optimizationCache");
+        if ((cacheDirectory != null) && !cacheDirectory.isEmpty()) {
+            service.setOptimizationCache(new OptimizationCache(new File(cacheDirectory), Long.getLong("optimizationCacheMaxSize", DEFAULT_OPTIMIZATION_CACHE_MAX_SIZE).longValue()));
+        }
+        final String verificationPolicy = System.getProperty("verificationPolicy");
+        if ((verificationPolicy != null) && !verificationPolicy.isEmpty()) {
+            service.setVerificationPolicy(VerificationPolicy.valueOf(verificationPolicy.toUpperCase()));
+        }
+        final String transparentPixels = System.getProperty("transparentPixels");
+        if ((transparentPixels != null) && !transparentPixels.isEmpty()) {
+            service.setTransparentPixels(TransparentPixels.valueOf(transparentPixels.toUpperCase()));
+        }
+        if (Boolean.getBoolean("lossyPng")) {
+            service.setLossyPng(true);
+            final String ssimThreshold = System.getProperty("ssimThreshold");
+            if ((ssimThreshold != null) && !ssimThreshold.isEmpty()) {
+                service.setSsimThreshold(Double.parseDouble(ssimThreshold));
+            }
+        }
+        final Set<File> noSavings = new HashSet<>();
+        final List<OptimizationResult<Void>> list = service.optimizeAllImages(FileTypeConversion.NONE, false, imagesToOptimize, noSavings);
         System.out.println(list);
         long originalSize = 0;
         long optimizedSize = 0;
@@ -133,6 +169,36 @@ public class Main {
         System.out.println("Total Optimized Size: " + optimizedSize);
         System.out.println("Total Savings: " + (originalSize - optimizedSize));
         System.out.println("Images can be downloaded from: " + service.getFinalResultsDirectory());
+
+        if (manifest != null) {
+            recordOutcomes(manifest, list, noSavings);
+        }
+    }
+
+    /**
+     * Records the outcome of every image that was optimized or could not be
+     * made any smaller in the manifest and writes it. Images that failed to
+     * optimize are left out, so the next run tries them again.
+     *
+     * @param manifest The manifest to update.
+     * @param results The results of processing the images.
+     * @param noSavings The images the service reported as not being able to
+     *                  make any smaller.
+     * @throws IOException Thrown if the manifest can not be written.
+     */
+    private static void recordOutcomes(final ChangeManifest manifest, final List<? extends OptimizationResult<?>> results, final Collection<File> noSavings) throws IOException {
+        final Set<File> optimized = new HashSet<>();
+        for (final OptimizationResult<?> result : results) {
+            if (optimized.add(result.getOriginalFile().getCanonicalFile())) {
+                manifest.record(result.getOriginalFile(), ChangeManifest.Outcome.OPTIMIZED);
+            }
+        }
+        for (final File image : noSavings) {
+            if (!optimized.contains(image.getCanonicalFile())) {
+                manifest.record(image, ChangeManifest.Outcome.NO_SAVINGS);
+            }
+        }
+        manifest.write();
     }
 
     /**
@@ -153,48 +219,53 @@ public class Main {
         if (JPEG_EXTENSION.equals(extension) || JPEG_EXTENSION2.equals(extension) || JPEG_EXTENSION3.equals(extension)) {
             return JPEG_MIME_TYPE.equals(contentType);
         }
+        if (SVG_EXTENSION.equals(extension)) {
+            // SVG is text so it is only recognized when the svg element starts
+            // within the first few KB. A long leading comment hides it.
+            return contentType == null || SVG_MIME_TYPE.equals(contentType);
+        }
         return false;
     }
 
     /**
      * Retrieves all of the valid images from the passed in directories.
      *
+     * @param manifest If not <code>null</code> then the images it reports as
+     *                 unchanged are skipped before their content is sniffed.
+     * @param gitChangeScanner If not <code>null</code> then only the images
+     *                         git reports as changed are returned, instead of
+     *                         every image in the directories.
      * @param rootDirectories The directories to search in.
      * @return The {@link List} of images that were found.
      * @throws IOException Thrown if there are any issues trying to read from
      *                     the file system.
      */
-    private static List<File> getAllImages(final String... rootDirectories) throws IOException  {
+    private static List<File> getAllImages(final ChangeManifest manifest, final GitChangeScanner gitChangeScanner, final String... rootDirectories) throws IOException  {
 
         final List<File> images = new ArrayList<>();
         for (final String rootDirectory : rootDirectories) {
             logger.info("Starting with {} at {}", rootDirectory, new Date());
-            InputStream is = null;
-            final Collection<File> c = FileUtils.listFiles(new File(rootDirectory), IImageOptimizationService.SUPPORTED_FILE_EXTENSIONS, true);
+            final Collection<File> c = (gitChangeScanner == null) ? FileUtils.listFiles(new File(rootDirectory), IImageOptimizationService.SUPPORTED_FILE_EXTENSIONS, true) : gitChangeScanner.getChangedImages(new File(rootDirectory));
+            int unchanged = 0;
             for (final File image : c) {
-                try {
-                    is = new BufferedInputStream(new FileInputStream(image));
-                    final String contentType = URLConnection.guessContentTypeFromStream(is);
-
-                    if (isValidContentType(contentType, FilenameUtils.getExtension(image.getName()).toLowerCase())) {
-                        images.add(image);
-                    } else if (image.length() > 0) {
-                        logger.warn("Skipping file. Unexpected content type for file\n\tfile: {}\n\tcontentType: {}", image.getPath(), contentType);
-                    }
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (final IOException ignore) {
-                            // If we can't close it then there is nothing we can
-                            // do and should move on.
-                        }
-                    }
+                if ((manifest != null) && manifest.isUnchanged(image)) {
+                    unchanged++;
+                    continue;
+                }
+                final String contentType = ImageProbe.probe(image).getMimeType();
+
+                if (isValidContentType(contentType, FilenameUtils.getExtension(image.getName()).toLowerCase())) {
+                    images.add(image);
+                } else if (image.length() > 0) {
+                    logger.warn("Skipping file. Unexpected content type for file\n\tfile: {}\n\tcontentType: {}", image.getPath(), contentType);
                 }
             }
 
             logger.info("Done with {} at {}", rootDirectory, new Date());
             logger.info("Found {} images.", Integer.valueOf(images.size()));
+            if (manifest != null) {
+                logger.info("Skipped {} unchanged images.", Integer.valueOf(unchanged));
+            }
         }
 
         return images;
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.dto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of an image found by reading its header and metadata
+ * blocks, without decoding any pixels.
+ *
+ * @since 2.0.2
+ */
+public final class ImageDescriptor {
+
+    /**
+     * How the colors of the pixels are stored.
+     */
+    public enum ColorType {
+        /** Gray scale without an alpha channel. */
+        GRAY,
+        /** Gray scale with an alpha channel. */
+        GRAY_ALPHA,
+        /** True color without an alpha channel. */
+        RGB,
+        /** True color with an alpha channel. */
+        RGB_ALPHA,
+        /** Indexes into a color palette. */
+        PALETTE,
+        /** Cyan, magenta, yellow and black. */
+        CMYK,
+        /** Not known from the header, e.g. for vector images. */
+        UNKNOWN
+    }
+
+    /**
+     * The value used for a dimension or bit depth that is not known.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final String format;
+    private final String mimeType;
+    private final int width;
+    private final int height;
+    private final ColorType colorType;
+    private final int bitDepth;
+    private final int frameCount;
+    private final boolean alphaTransparencyPossible;
+    private final List<String> metadata;
+
+    /**
+     * Constructor which sets all of the values.
+     *
+     * @param format The file extension of the image's format, e.g.
+     *               <code>png</code>, or <code>null</code> if the format is
+     *               not known.
+     * @param mimeType The mime type of the image's format or
+     *                 <code>null</code> if the format is not known.
+     * @param width The width in pixels or {@value #UNKNOWN}.
+     * @param height The height in pixels or {@value #UNKNOWN}.
+     * @param colorType How the colors of the pixels are stored.
+     * @param bitDepth The number of bits per sample or {@value #UNKNOWN}.
+     * @param frameCount The number of frames, which is 1 for a still image.
+     * @param alphaTransparencyPossible {@code false} if the header proves that
+     *                                  no pixel has some percentage of
+     *                                  transparency (Alpha).
+     * @param metadata The names of the embedded metadata blocks, e.g.
+     *                 <code>Exif</code> or <code>tEXt</code>.
+     */
+    public ImageDescriptor(final String format, final String mimeType, final int width, final int height, final ColorType colorType, final int bitDepth, final int frameCount, final boolean alphaTransparencyPossible, final Collection<String> metadata) {
+        this.format = format;
+        this.mimeType = mimeType;
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bitDepth = bitDepth;
+        this.frameCount = frameCount;
+        this.alphaTransparencyPossible = alphaTransparencyPossible;
+        this.metadata = Collections.unmodifiableList(new ArrayList<>(metadata));
+    }
+
+    /**
+     * @return The file extension of the image's format, e.g.
+     *         <code>png</code>, or <code>null</code> if the format is not
+     *         known.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return The mime type of the image's format or <code>null</code> if the
+     *         format is not known.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return The width in pixels or {@value #UNKNOWN}.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height in pixels or {@value #UNKNOWN}.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return How the colors of the pixels are stored.
+     */
+    public ColorType getColorType() {
+        return colorType;
+    }
+
+    /**
+     * @return The number of bits per sample or {@value #UNKNOWN}.
+     */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * @return The number of frames, which is 1 for a still image. For a GIF
+     *         or a WebP the header is only read up to the second frame, so 2
+     *         means at least 2.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return {@code true} if the image has more than 1 frame.
+     */
+    public boolean isAnimated() {
+        return frameCount > 1;
+    }
+
+    /**
+     * @return {@code false} if the header proves that no pixel has some
+     *         percentage of transparency (Alpha). {@code true} only means the
+     *         pixels have to be checked.
+     */
+    public boolean isAlphaTransparencyPossible() {
+        return alphaTransparencyPossible;
+    }
+
+    /**
+     * @return The names of the embedded metadata blocks in the header, e.g.
+     *         <code>Exif</code> or <code>tEXt</code>. Blocks after the image
+     *         data are not known. Can not be modified.
+     */
+    public List<String> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ImageDescriptor [format=" + format + ", width=" + width + ", height=" + height + ", colorType=" + colorType
+                + ", bitDepth=" + bitDepth + ", frameCount=" + frameCount + ", alphaTransparencyPossible=" + alphaTransparencyPossible
+                + ", metadata=" + metadata + "]";
+    }
+}
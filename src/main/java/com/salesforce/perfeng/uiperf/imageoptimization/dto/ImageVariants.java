@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.dto;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds all of the optimized versions (variants) of 1 image, ranked from the
+ * smallest to the largest.
+ *
+ * @param <C> The changelist object.
+ * @since 2.0.2
+ */
+public class ImageVariants<C> {
+
+    private final File originalFile;
+    private final long originalFileSize;
+    private final List<OptimizationResult<C>> variants;
+
+    /**
+     * Constructor which ranks the passed in variants by size.
+     *
+     * @param originalFile The original version of the image
+     * @param originalFileSize The size of the original image (aka
+     *                         {@link File#length()}
+     * @param variants The optimized versions of the original image.
+     */
+    public ImageVariants(final File originalFile, final long originalFileSize, final Collection<OptimizationResult<C>> variants) {
+        this.originalFile = originalFile;
+        this.originalFileSize = originalFileSize;
+        final List<OptimizationResult<C>> sorted = new ArrayList<>(variants);
+        sorted.sort(Comparator.comparingLong(OptimizationResult::getOptimizedFileSize));
+        this.variants = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Groups the passed in results by {@link OptimizationResult#getOriginalFile()}.
+     *
+     * @param results The results of optimizing the images.
+     * @param <C> The changelist object.
+     * @return One {@link ImageVariants} per original image, in the order the
+     *         original images first appear in the results.
+     */
+    public static <C> List<ImageVariants<C>> groupByOriginalFile(final Collection<OptimizationResult<C>> results) {
+        final Map<File, List<OptimizationResult<C>>> grouped = new LinkedHashMap<>();
+        for (final OptimizationResult<C> result : results) {
+            grouped.computeIfAbsent(result.getOriginalFile(), k -> new ArrayList<>()).add(result);
+        }
+
+        final List<ImageVariants<C>> imageVariants = new ArrayList<>(grouped.size());
+        for (final List<OptimizationResult<C>> group : grouped.values()) {
+            final OptimizationResult<C> first = group.get(0);
+            imageVariants.add(new ImageVariants<>(first.getOriginalFile(), first.getOriginalFileSize(), group));
+        }
+        return imageVariants;
+    }
+
+    /**
+     * @return Returns the originalFile
+     */
+    public File getOriginalFile() {
+        return originalFile;
+    }
+
+    /**
+     * @return Returns the originalFileSize
+     */
+    public long getOriginalFileSize() {
+        return originalFileSize;
+    }
+
+    /**
+     * @return All of the optimized versions of the image ordered from the
+     *         smallest to the largest. Can not be modified.
+     */
+    public List<OptimizationResult<C>> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @param includeBrowserSpecific If <code>true</code> then variants that
+     *                               only work in some browsers (WebP, AVIF,
+     *                               ...) are considered.
+     * @return The smallest variant that passed the automated test, or
+     *         <code>null</code> if there is none.
+     */
+    public OptimizationResult<C> getSmallestVariant(final boolean includeBrowserSpecific) {
+        for (final OptimizationResult<C> variant : variants) {
+            if ((includeBrowserSpecific || !variant.isBrowserSpecific()) && !variant.isFailedAutomatedTest()) {
+                return variant;
+            }
+        }
+        return null;
+    }
+}
@@ -29,6 +29,10 @@ package com.salesforce.perfeng.uiperf.imageoptimization.dto;
 
 import java.io.File;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This class holds the results of optimizing 1 image.
@@ -44,11 +48,15 @@ public class OptimizationResult<C> {
     private final File originalFile;
     private final long originalFileSize;
     private final boolean fileTypeChanged;
-    private final boolean failedAutomatedTest;
+    private final Future<Boolean> failedAutomatedTest;
     private final boolean isBrowserSpecific;
     private C newChangeList;
     private String gusBugId;
     private String ownerUserName;
+    private ImageDescriptor imageDescriptor;
+    private VerificationPolicy verificationPolicy;
+    private boolean verified;
+    private int lossyQuality = -1;
 
     /**
      * Constructor which sets all of the values.
@@ -73,6 +81,30 @@ public class OptimizationResult<C> {
      *                          type of browser.
      */
     public OptimizationResult(final File optimizedFile, final long optimizedFileSize, final File originalFile, final long originalFileSize, final boolean fileTypeChanged, final boolean failedAutomatedTest, final boolean isBrowserSpecific) {
+        this(optimizedFile, optimizedFileSize, originalFile, originalFileSize, fileTypeChanged, CompletableFuture.completedFuture(Boolean.valueOf(failedAutomatedTest)), isBrowserSpecific);
+    }
+
+    /**
+     * Constructor for a result whose automated validation may still be
+     * running.
+     *
+     * @param optimizedFile The optimized version of the image
+     * @param optimizedFileSize The size of the optimized image (aka
+     *                          {@link File#length()}
+     * @param originalFile The original version of the image
+     * @param originalFileSize The size of the original image (aka
+     *                         {@link File#length()}
+     * @param fileTypeChanged {@code true} if the file type of the optimized
+     *                        image is different than the file type of the
+     *                        original images.
+     * @param failedAutomatedTest Completes with {@code true} if the file failed
+     *                            the automated validation after compression.
+     *                            {@link #isFailedAutomatedTest()} waits for it.
+     * @param isBrowserSpecific {@code true} if the image format only works in 1
+     *                          type of browser.
+     * @since 2.0.2
+     */
+    public OptimizationResult(final File optimizedFile, final long optimizedFileSize, final File originalFile, final long originalFileSize, final boolean fileTypeChanged, final Future<Boolean> failedAutomatedTest, final boolean isBrowserSpecific) {
         this.optimizedFile = optimizedFile;
         this.optimizedFileSize = optimizedFileSize;
         this.originalFile = originalFile;
@@ -126,9 +158,28 @@ public class OptimizationResult<C> {
     }
 
     /**
+     * Waits for the automated validation to finish if it is still running. A
+     * validation that could not finish is treated as failed.
+     *
      * @return Returns the failedAutomatedTest
      */
     public boolean isFailedAutomatedTest() {
+        try {
+            return failedAutomatedTest.get().booleanValue();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (final ExecutionException | CancellationException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return The automated validation, which may still be running.
+     * @see #isFailedAutomatedTest()
+     * @since 2.0.2
+     */
+    public final Future<Boolean> getFailedAutomatedTest() {
         return failedAutomatedTest;
     }
 
@@ -176,6 +227,83 @@ public class OptimizationResult<C> {
         this.ownerUserName = ownerUserName;
     }
 
+    /**
+     * @return The description of the original image read from its header, or
+     *         <code>null</code> if it is not known.
+     * @since 2.0.2
+     */
+    public final ImageDescriptor getImageDescriptor() {
+        return imageDescriptor;
+    }
+
+    /**
+     * @param imageDescriptor The description of the original image read from
+     *                        its header.
+     * @since 2.0.2
+     */
+    public final void setImageDescriptor(final ImageDescriptor imageDescriptor) {
+        this.imageDescriptor = imageDescriptor;
+    }
+
+    /**
+     * @return The policy that decided if the optimized image was checked, or
+     *         <code>null</code> if it is not known.
+     * @since 2.0.2
+     */
+    public final VerificationPolicy getVerificationPolicy() {
+        return verificationPolicy;
+    }
+
+    /**
+     * @param verificationPolicy The policy that decided if the optimized image
+     *                           was checked.
+     * @since 2.0.2
+     */
+    public final void setVerificationPolicy(final VerificationPolicy verificationPolicy) {
+        this.verificationPolicy = verificationPolicy;
+    }
+
+    /**
+     * @return <code>true</code> if the optimized image was checked to look the
+     *         same as the original. If <code>false</code> then
+     *         {@link #isFailedAutomatedTest()} is <code>false</code> without a
+     *         check. Images of the lossy PNG mode are never verified, they are
+     *         only gated by their SSIM, see {@link #getLossyQuality()}.
+     * @since 2.0.2
+     */
+    public final boolean isVerified() {
+        return verified;
+    }
+
+    /**
+     * @param verified <code>true</code> if the optimized image was checked to
+     *                 look the same as the original.
+     * @since 2.0.2
+     */
+    public final void setVerified(final boolean verified) {
+        this.verified = verified;
+    }
+
+    /**
+     * @return The minimum quality (0 - 100) {@code pngquant} was allowed to
+     *         use when the optimized image was created by the lossy PNG mode,
+     *         or <code>-1</code> if the optimized image is lossless.
+     * @since 2.0.2
+     */
+    public final int getLossyQuality() {
+        return lossyQuality;
+    }
+
+    /**
+     * @param lossyQuality The minimum quality {@code pngquant} was allowed to
+     *                     use or <code>-1</code> if the optimized image is
+     *                     lossless.
+     * @since 2.0.2
+     */
+    public final void setLossyQuality(final int lossyQuality) {
+        this.lossyQuality = lossyQuality;
+    }
+
     /**
      * @return the isBrowserSpecific
      */
@@ -184,18 +312,20 @@ public class OptimizationResult<C> {
     }
 
     /**
-     * Eclipse generated with a subset of the fields
+     * Eclipse generated with a subset of the fields. The automated validation
+     * is left out so this never waits for it.
      *
      * @see java.lang.Object#hashCode()
      */
     @SuppressWarnings("boxing")
     @Override
     public int hashCode() {
-        return Objects.hash(failedAutomatedTest, fileTypeChanged, isBrowserSpecific, gusBugId, newChangeList, optimizedFile, optimizedFileSize, originalFile, originalFileSize);
+        return Objects.hash(fileTypeChanged, isBrowserSpecific, gusBugId, newChangeList, optimizedFile, optimizedFileSize, originalFile, originalFileSize);
     }
 
     /**
-     * Eclipse generated with a subset of the fields
+     * Eclipse generated with a subset of the fields. The automated validation
+     * is left out so this never waits for it.
      *
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -208,9 +338,6 @@ public class OptimizationResult<C> {
             return false;
         }
         final OptimizationResult<?> other = (OptimizationResult<?>) obj;
-        if (failedAutomatedTest != other.failedAutomatedTest) {
-            return false;
-        }
         if (fileTypeChanged != other.fileTypeChanged) {
             return false;
         }
@@ -250,7 +377,8 @@ public class OptimizationResult<C> {
         if(fileTypeChanged) {
             sb.append(" --> ").append(optimizedFile.getName());
         }
-        return sb.append("\n\tfailedAutomatedTest:\t").append(failedAutomatedTest)
+        // Does not wait for the automated validation.
+        return sb.append("\n\tfailedAutomatedTest:\t").append(failedAutomatedTest.isDone() ? Boolean.valueOf(isFailedAutomatedTest()) : "pending")
                 .append("\n\tfileTypeChanged:\t").append(fileTypeChanged)
                 .append("\n\tisBrowserSpecific:\t").append(isBrowserSpecific)
                 .append("\n\toriginalFileSize:\t").append(originalFileSize)
@@ -28,10 +28,12 @@
 package com.salesforce.perfeng.uiperf.imageoptimization.service;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageVariants;
 import com.salesforce.perfeng.uiperf.imageoptimization.dto.OptimizationResult;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
 
@@ -84,6 +86,30 @@ public interface IImageOptimizationService<C> {
      * The WebP mime type.
      */
     public final static String WEBP_MIME_TYPE = "image/webp";
+    /**
+     * The AVIF extension.
+     */
+    public final static String AVIF_EXTENSION = "avif";
+    /**
+     * The AVIF mime type.
+     */
+    public final static String AVIF_MIME_TYPE = "image/avif";
+    /**
+     * The JPEG XL extension.
+     */
+    public final static String JXL_EXTENSION = "jxl";
+    /**
+     * The JPEG XL mime type.
+     */
+    public final static String JXL_MIME_TYPE = "image/jxl";
+    /**
+     * The SVG extension.
+     */
+    public final static String SVG_EXTENSION = "svg";
+    /**
+     * The SVG mime type.
+     */
+    public final static String SVG_MIME_TYPE = "image/svg+xml";
 
     /**
      * <p>Used by the image optimization service to indicate if and how images
@@ -125,11 +151,52 @@ public interface IImageOptimizationService<C> {
         }
     }
 
+    /**
+     * The name of the variant manifest written by
+     * {@link #optimizeAllImagesAndWriteManifest(FileTypeConversion, boolean, Collection)}
+     * into the {@link #getFinalResultsDirectory()}.
+     */
+    public final static String VARIANT_MANIFEST_FILE_NAME = "variants.json";
+
+    /**
+     * Returns the mime type for the passed in extension.
+     *
+     * @param extension The file extension, without the period.
+     * @return The mime type or <code>null</code> if the extension is not one of
+     *         the image types known by the service.
+     * @since 2.0.2
+     */
+    public static String getMimeType(final String extension) {
+        if (extension == null) {
+            return null;
+        }
+        switch (extension.toLowerCase()) {
+            case PNG_EXTENSION:
+                return PNG_MIME_TYPE;
+            case JPEG_EXTENSION:
+            case JPEG_EXTENSION2:
+            case JPEG_EXTENSION3:
+                return JPEG_MIME_TYPE;
+            case GIF_EXTENSION:
+                return GIF_MIME_TYPE;
+            case WEBP_EXTENSION:
+                return WEBP_MIME_TYPE;
+            case AVIF_EXTENSION:
+                return AVIF_MIME_TYPE;
+            case JXL_EXTENSION:
+                return JXL_MIME_TYPE;
+            case SVG_EXTENSION:
+                return SVG_MIME_TYPE;
+            default:
+                return null;
+        }
+    }
+
     /**
      * The complete list of supported file extensions that the service will
      * optimize.
      */
-    public final static String[] SUPPORTED_FILE_EXTENSIONS = {PNG_EXTENSION, JPEG_EXTENSION, GIF_EXTENSION, JPEG_EXTENSION2, JPEG_EXTENSION3, PNG_EXTENSION.toUpperCase(), JPEG_EXTENSION.toUpperCase(), GIF_EXTENSION.toUpperCase(), JPEG_EXTENSION2.toUpperCase(), JPEG_EXTENSION3.toUpperCase()};
+    public final static String[] SUPPORTED_FILE_EXTENSIONS = {PNG_EXTENSION, JPEG_EXTENSION, GIF_EXTENSION, JPEG_EXTENSION2, JPEG_EXTENSION3, SVG_EXTENSION, PNG_EXTENSION.toUpperCase(), JPEG_EXTENSION.toUpperCase(), GIF_EXTENSION.toUpperCase(), JPEG_EXTENSION2.toUpperCase(), JPEG_EXTENSION3.toUpperCase(), SVG_EXTENSION.toUpperCase()};
 
     /**
      * This method will try to optimize all of the passed in images.
@@ -149,6 +216,32 @@ public interface IImageOptimizationService<C> {
      */
     public List<OptimizationResult<C>> optimizeAllImages(final FileTypeConversion conversionType, final boolean includeWebPConversion, final Collection<File> files) throws ImageFileOptimizationException, TimeoutException;
 
+    /**
+     * This method will try to optimize all of the passed in images and reports
+     * the images that could not be made any smaller.
+     *
+     * @param conversionType If and how to handle converting images from one
+     *                       type to another.
+     * @param includeWebPConversion If <code>true</code> then the WebP versions
+     *                              of the image will be generated.
+     * @param files The images to optimize
+     * @param noSavings Receives the images for which every stage ran
+     *                  successfully but none could make them any smaller.
+     *                  Images that failed to optimize are not added. The
+     *                  default implementation does not add any images.
+     * @return The results from the optimization. All items in the {@link List}
+     *         are considered optimized, not <code>null</code>, and will exclude
+     *         images that could not be optimized to a smaller size.
+     * @throws ImageFileOptimizationException Thrown if there is a problem
+     *                                        optimizing an image.
+     * @throws TimeoutException Happens if an image took to long to optimize.
+     * @see #optimizeAllImages(FileTypeConversion, boolean, Collection)
+     * @since 2.0.2
+     */
+    public default List<OptimizationResult<C>> optimizeAllImages(final FileTypeConversion conversionType, final boolean includeWebPConversion, final Collection<File> files, final Collection<File> noSavings) throws ImageFileOptimizationException, TimeoutException {
+        return optimizeAllImages(conversionType, includeWebPConversion, files);
+    }
+
     /**
      * This method will try to optimize all of the passed in images.
      *
@@ -167,6 +260,33 @@ public interface IImageOptimizationService<C> {
      */
     public List<OptimizationResult<C>> optimizeAllImages(final FileTypeConversion conversionType, final boolean includeWebPConversion, final File... files) throws ImageFileOptimizationException, TimeoutException;
 
+    /**
+     * Optimizes all of the passed in images, groups the results per original
+     * image, ranks each image's variants by size, and writes the
+     * {@value #VARIANT_MANIFEST_FILE_NAME} manifest (JSON) listing the path,
+     * size, and mime type of every variant into the
+     * {@link #getFinalResultsDirectory()}.
+     *
+     * @param conversionType If and how to handle converting images from one
+     *                       type to another.
+     * @param includeWebPConversion If <code>true</code> then the WebP versions
+     *                              of the image will be generated.
+     * @param files The images to optimize
+     * @return The variants of each image that could be optimized to a smaller
+     *         size.
+     * @throws ImageFileOptimizationException Thrown if there is a problem
+     *                                        optimizing an image.
+     * @throws TimeoutException Thrown if it takes to long to optimize an image.
+     * @throws IOException Thrown if the manifest can not be written.
+     * @see #optimizeAllImages(FileTypeConversion, boolean, Collection)
+     * @since 2.0.2
+     */
+    public default List<ImageVariants<C>> optimizeAllImagesAndWriteManifest(final FileTypeConversion conversionType, final boolean includeWebPConversion, final Collection<File> files) throws ImageFileOptimizationException, TimeoutException, IOException {
+        final List<ImageVariants<C>> imageVariants = ImageVariants.groupByOriginalFile(optimizeAllImages(conversionType, includeWebPConversion, files));
+        VariantManifestWriter.write(imageVariants, new File(getFinalResultsDirectory(), VARIANT_MANIFEST_FILE_NAME));
+        return imageVariants;
+    }
+
     /**
      * Returns the path to the optimized images.
      *
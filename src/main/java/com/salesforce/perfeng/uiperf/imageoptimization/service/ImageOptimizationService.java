@@ -39,16 +39,26 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -61,10 +71,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor;
 import com.salesforce.perfeng.uiperf.imageoptimization.dto.OptimizationResult;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.VerificationPolicy;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.DecodedImageCache;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.FixedFileUtils;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.HashUtils;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageProbe;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageUtils;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.PixelDigest;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.PngColorReducer;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.PngColorReducer.TransparentPixels;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.SsimComparator;
 
 /**
  * Service used to perform the optimization of images. This class is threadsafe.
@@ -100,6 +119,21 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
      * image to WEBP.
      */
     static final String WEBP_ERROR_MESSAGE;
+    /**
+     * Internal error message used when an error occurred while converting an
+     * image to AVIF.
+     */
+    static final String AVIF_ERROR_MESSAGE;
+    /**
+     * Internal error message used when an error occurred while transcoding an
+     * image to JPEG XL.
+     */
+    static final String JXL_ERROR_MESSAGE;
+    /**
+     * Internal error message used when an error occurred while optimizing an
+     * SVG image.
+     */
+    static final String SVG_ERROR_MESSAGE;
 
     static {
         final String common = "Error %s %s. This image will be skipped. Usually this is caused by the original image being in an unsupported format or corrupted (or not an image). Moving on with the rest of the optimizations.";
@@ -107,6 +141,9 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         JPEG_ERROR_MESSAGE = String.format(common, "optimizing", IImageOptimizationService.JPEG_EXTENSION.toUpperCase());
         PNG_ERROR_MESSAGE  = String.format(common, "optimizing", IImageOptimizationService.PNG_EXTENSION.toUpperCase());
         WEBP_ERROR_MESSAGE = String.format(common, "converting to", IImageOptimizationService.WEBP_EXTENSION.toUpperCase());
+        AVIF_ERROR_MESSAGE = String.format(common, "converting to", IImageOptimizationService.AVIF_EXTENSION.toUpperCase());
+        JXL_ERROR_MESSAGE  = String.format(common, "transcoding to", IImageOptimizationService.JXL_EXTENSION.toUpperCase());
+        SVG_ERROR_MESSAGE  = String.format(common, "optimizing", IImageOptimizationService.SVG_EXTENSION.toUpperCase());
     }
 
     /**
@@ -158,6 +195,31 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
      * a {@value IImageOptimizationService#PNG_MIME_TYPE} file.
      */
     protected static final String PNGQUANT_BINARY  = "pngquant";
+    /**
+     * Name of the {@value #AVIFENC_BINARY} binary application used to convert
+     * a {@value IImageOptimizationService#PNG_MIME_TYPE} or
+     * {@value IImageOptimizationService#JPEG_MIME_TYPE} file to a
+     * {@value IImageOptimizationService#AVIF_MIME_TYPE} file.
+     */
+    protected static final String AVIFENC_BINARY   = "avifenc";
+    /**
+     * Name of the {@value #CJXL_BINARY} binary application used to losslessly
+     * transcode a {@value IImageOptimizationService#JPEG_MIME_TYPE} file to a
+     * {@value IImageOptimizationService#JXL_MIME_TYPE} file.
+     */
+    protected static final String CJXL_BINARY      = "cjxl";
+    /**
+     * Name of the {@value #DJXL_BINARY} binary application used to reconstruct
+     * the original {@value IImageOptimizationService#JPEG_MIME_TYPE} file from
+     * a {@value IImageOptimizationService#JXL_MIME_TYPE} file.
+     */
+    protected static final String DJXL_BINARY      = "djxl";
+    /**
+     * Name of the {@value #NODE_BINARY} binary application used to run the
+     * svgo optimizer, bundled in the <code>org.webjars:svgo</code> webjar, on
+     * a {@value IImageOptimizationService#SVG_MIME_TYPE} file.
+     */
+    protected static final String NODE_BINARY      = "node";
 
     /**
      * Path of the "cwebp" binary application used to convert a
@@ -206,14 +268,125 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
      * a {@value IImageOptimizationService#PNG_MIME_TYPE} file.
      */
     protected final String pngquantBinaryPath;
+    /**
+     * Path of the {@value #AVIFENC_BINARY} binary application used to convert
+     * a {@value IImageOptimizationService#PNG_MIME_TYPE} or
+     * {@value IImageOptimizationService#JPEG_MIME_TYPE} file to a
+     * {@value IImageOptimizationService#AVIF_MIME_TYPE} file.
+     */
+    protected final String avifencBinaryPath;
+    /**
+     * Path of the {@value #CJXL_BINARY} binary application used to losslessly
+     * transcode a {@value IImageOptimizationService#JPEG_MIME_TYPE} file to a
+     * {@value IImageOptimizationService#JXL_MIME_TYPE} file.
+     */
+    protected final String cjxlBinaryPath;
+    /**
+     * Path of the {@value #DJXL_BINARY} binary application used to reconstruct
+     * the original {@value IImageOptimizationService#JPEG_MIME_TYPE} file from
+     * a {@value IImageOptimizationService#JXL_MIME_TYPE} file.
+     */
+    protected final String djxlBinaryPath;
     
     /**
      * Instance of the {@link ImageUtils}.
      */
     final ImageUtils imageUtils;
 
+    /**
+     * The warm node processes used to optimize
+     * {@value IImageOptimizationService#SVG_MIME_TYPE} files.
+     */
+    private final SvgoEnginePool svgoEnginePool;
+
+    /**
+     * <p>Used to indicate how the frames of an animated
+     * {@value IImageOptimizationService#GIF_MIME_TYPE} are encoded when it is
+     * converted to an animated
+     * {@value IImageOptimizationService#WEBP_MIME_TYPE} by
+     * {@value #GIF2WEBP_BINARY}.</p>
+     *
+     * @since 2.0.2
+     */
+    public enum AnimatedWebPCompression {
+        /**
+         * Every frame is encoded losslessly. This is the default.
+         */
+        LOSSLESS,
+        /**
+         * Every frame is encoded lossy using the configured quality.
+         */
+        LOSSY,
+        /**
+         * Each frame is encoded both lossy and lossless and the smaller of the
+         * two is kept.
+         */
+        MIXED
+    }
+
+    private volatile AnimatedWebPCompression animatedWebPCompression = AnimatedWebPCompression.LOSSLESS;
+    private volatile int animatedWebPQuality = 75;
+
+    private volatile boolean includeAvifConversion = false;
+    private volatile int avifSpeed = 6;
+    private volatile int avifQuality = 60;
+    private volatile boolean avifLossless = true;
+
+    private volatile boolean includeJxlConversion = false;
+
+    private volatile TransparentPixels transparentPixels = TransparentPixels.ZERO;
+
+    private volatile boolean lossyPng = false;
+    private volatile double ssimThreshold = SsimComparator.DEFAULT_THRESHOLD;
+
+    /**
+     * The minimum qualities tried by the lossy PNG mode. Each is tried with a
+     * target 10 points higher.
+     */
+    static final int[] LOSSY_PNG_QUALITY_FLOORS = {90, 80, 70, 60, 50};
+
+    private volatile VerificationPolicy verificationPolicy = VerificationPolicy.ALWAYS;
+    private volatile double verificationSampleRate = 0.1;
+
+    private volatile OptimizationCache optimizationCache;
+
+    /**
+     * The optimizations that are currently running, keyed by
+     * {@link SingleFlightOptimization}.
+     */
+    private final ConcurrentMap<String, InFlightOptimization> inFlightOptimizations = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of pixel digests of original images kept in memory.
+     */
+    private static final int MAX_MASTER_PIXEL_DIGESTS = 4096;
+
+    /**
+     * The {@link PixelDigest} of recently verified original images, keyed by
+     * {@link #getMasterPixelDigest(File, String)}, so an original is decoded
+     * at most once no matter how many optimized versions are verified.
+     */
+    private final Map<String, String> masterPixelDigests = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > MAX_MASTER_PIXEL_DIGESTS;
+        }
+    });
+
+    /**
+     * Prefix of the key used by {@link #groupByContent(Collection)} for an
+     * image whose content could not be hashed.
+     */
+    private static final String UNHASHED_PREFIX = "unhashed:";
+
     private final int MAX_NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
 
+    /**
+     * Bounds the {@value #PNGQUANT_BINARY} processes the lossy PNG mode runs
+     * in addition to the one process per task of {@link #executorService}.
+     */
+    private final Semaphore lossyPngquantPermits = new Semaphore(MAX_NUMBER_OF_THREADS);
+
     private final ExecutorService executorService = Executors.newFixedThreadPool(MAX_NUMBER_OF_THREADS, new ThreadFactory() {
         /**
          * Makes the thread daemon threads so they can be killed automatically
@@ -229,6 +402,27 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         }
     });
 
+    /**
+     * Runs the automated validation of the optimized images, so that the
+     * threads of {@link #executorService} and the scratch files are not tied
+     * up while an image is decoded. The threads have a low priority so
+     * optimizing takes precedence.
+     */
+    private final ExecutorService verificationExecutorService = Executors.newFixedThreadPool(MAX_NUMBER_OF_THREADS, new ThreadFactory() {
+        /**
+         * Makes the thread low priority daemon threads.
+         *
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
     private final File tmpWorkingDirectory;
     private final String finalWorkingDirectoryPath;
     private final int timeoutInSeconds;
@@ -280,7 +474,11 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         optipngBinaryPath    = binaryDirectoryPath + OPTIPNG_BINARY;
         pngoutBinaryPath     = binaryDirectoryPath + PNGOUT_BINARY;
         pngquantBinaryPath   = binaryDirectoryPath + PNGQUANT_BINARY;
+        avifencBinaryPath    = binaryDirectoryPath + AVIFENC_BINARY;
+        cjxlBinaryPath       = binaryDirectoryPath + CJXL_BINARY;
+        djxlBinaryPath       = binaryDirectoryPath + DJXL_BINARY;
         imageUtils           = new ImageUtils(binaryDirectoryPath);
+        svgoEnginePool       = new SvgoEnginePool(binaryDirectoryPath + NODE_BINARY, new File(binaryDirectory, "node_modules"), new File(this.tmpWorkingDirectory, "svgo"), MAX_NUMBER_OF_THREADS, timeoutInSeconds);
     }
 
     /**
@@ -350,6 +548,301 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         return new ImageOptimizationService<>(tmpDir, new File(pathToBinaryProgramsForImageOptimizationDirectory).getCanonicalFile(), timeoutInSeconds);
     }
 
+    /**
+     * @return How the frames of an animated GIF are encoded when it is
+     *         converted to WebP.
+     */
+    public AnimatedWebPCompression getAnimatedWebPCompression() {
+        return animatedWebPCompression;
+    }
+
+    /**
+     * Sets how the frames of an animated GIF are encoded when it is converted
+     * to WebP. Only used when the WebP conversion is requested.
+     *
+     * @param animatedWebPCompression The compression to use. Can not be
+     *                                <code>null</code>.
+     */
+    public void setAnimatedWebPCompression(final AnimatedWebPCompression animatedWebPCompression) {
+        if (animatedWebPCompression == null) {
+            throw new IllegalArgumentException("The passed in animatedWebPCompression can not be null.");
+        }
+        this.animatedWebPCompression = animatedWebPCompression;
+    }
+
+    /**
+     * @return The quality factor (0 - 100) used for the lossy frames of an
+     *         animated WebP.
+     */
+    public int getAnimatedWebPQuality() {
+        return animatedWebPQuality;
+    }
+
+    /**
+     * Sets the quality factor used for lossy frames when an animated GIF is
+     * converted to WebP using {@link AnimatedWebPCompression#LOSSY} or
+     * {@link AnimatedWebPCompression#MIXED}.
+     *
+     * @param animatedWebPQuality A value between 0 and 100 (inclusive).
+     */
+    public void setAnimatedWebPQuality(final int animatedWebPQuality) {
+        if ((animatedWebPQuality < 0) || (animatedWebPQuality > 100)) {
+            throw new IllegalArgumentException("The passed in animatedWebPQuality, " + animatedWebPQuality + ", needs to be between 0 and 100.");
+        }
+        this.animatedWebPQuality = animatedWebPQuality;
+    }
+
+    /**
+     * @return <code>true</code> if AVIF versions of the PNG and JPEG images
+     *         are generated.
+     */
+    public boolean isIncludeAvifConversion() {
+        return includeAvifConversion;
+    }
+
+    /**
+     * Turns on / off the generation of the AVIF version of the PNG and JPEG
+     * images. The AVIF versions are generated in parallel with the other
+     * optimizations and are only returned if they are smaller than the
+     * original image. Requires the {@value #AVIFENC_BINARY} binary.
+     *
+     * @param includeAvifConversion If <code>true</code> then the AVIF versions
+     *                              of the images will be generated.
+     */
+    public void setIncludeAvifConversion(final boolean includeAvifConversion) {
+        this.includeAvifConversion = includeAvifConversion;
+    }
+
+    /**
+     * @return The encoder speed (0 - 10) used by {@value #AVIFENC_BINARY}.
+     */
+    public int getAvifSpeed() {
+        return avifSpeed;
+    }
+
+    /**
+     * Sets the encoder speed used by {@value #AVIFENC_BINARY}. 0 is the
+     * slowest and produces the smallest images, 10 is the fastest.
+     *
+     * @param avifSpeed A value between 0 and 10 (inclusive).
+     */
+    public void setAvifSpeed(final int avifSpeed) {
+        if ((avifSpeed < 0) || (avifSpeed > 10)) {
+            throw new IllegalArgumentException("The passed in avifSpeed, " + avifSpeed + ", needs to be between 0 and 10.");
+        }
+        this.avifSpeed = avifSpeed;
+    }
+
+    /**
+     * @return The quality (0 - 100) used by {@value #AVIFENC_BINARY}.
+     */
+    public int getAvifQuality() {
+        return avifQuality;
+    }
+
+    /**
+     * Sets the quality used by {@value #AVIFENC_BINARY}. Ignored if
+     * {@link #isAvifLossless()} is <code>true</code>.
+     *
+     * @param avifQuality A value between 0 and 100 (inclusive).
+     */
+    public void setAvifQuality(final int avifQuality) {
+        if ((avifQuality < 0) || (avifQuality > 100)) {
+            throw new IllegalArgumentException("The passed in avifQuality, " + avifQuality + ", needs to be between 0 and 100.");
+        }
+        this.avifQuality = avifQuality;
+    }
+
+    /**
+     * @return <code>true</code> if the AVIF images are encoded losslessly,
+     *         which is the default.
+     */
+    public boolean isAvifLossless() {
+        return avifLossless;
+    }
+
+    /**
+     * Lossy AVIF images are not verified because they can not be decoded to
+     * compare them with the original, so they need to be opted in to.
+     *
+     * @param avifLossless If <code>true</code>, the default, then the AVIF
+     *                     images are encoded losslessly and the quality is
+     *                     ignored.
+     */
+    public void setAvifLossless(final boolean avifLossless) {
+        this.avifLossless = avifLossless;
+    }
+
+    /**
+     * @return <code>true</code> if JPEG XL versions of the JPEG images are
+     *         generated.
+     */
+    public boolean isIncludeJxlConversion() {
+        return includeJxlConversion;
+    }
+
+    /**
+     * Turns on / off the lossless transcoding of JPEG images to JPEG XL. The
+     * transcoding runs in parallel with the JPEG optimization. Each JPEG XL
+     * image is decoded back to a JPEG and if the result is not byte for byte
+     * identical to the original the {@link OptimizationResult} is marked as
+     * failing the automated test. Requires the {@value #CJXL_BINARY} and
+     * {@value #DJXL_BINARY} binaries.
+     *
+     * @param includeJxlConversion If <code>true</code> then the JPEG XL
+     *                             versions of the JPEG images will be
+     *                             generated.
+     */
+    public void setIncludeJxlConversion(final boolean includeJxlConversion) {
+        this.includeJxlConversion = includeJxlConversion;
+    }
+
+    /**
+     * @return How the color of 100% transparent pixels in PNG images is
+     *         rewritten before the PNG tools run.
+     * @since 2.0.2
+     */
+    public TransparentPixels getTransparentPixels() {
+        return transparentPixels;
+    }
+
+    /**
+     * Sets how the color of 100% transparent pixels in PNG images is rewritten
+     * before the PNG tools run. The color of these pixels is never seen, so
+     * the automated test accepts any of them. Defaults to
+     * {@link TransparentPixels#ZERO}.
+     *
+     * @param transparentPixels The normalization to use. Can not be
+     *                          <code>null</code>.
+     * @since 2.0.2
+     */
+    public void setTransparentPixels(final TransparentPixels transparentPixels) {
+        if (transparentPixels == null) {
+            throw new IllegalArgumentException("The passed in transparentPixels can not be null.");
+        }
+        this.transparentPixels = transparentPixels;
+    }
+
+    /**
+     * @return <code>true</code> if the lossy PNG mode is turned on.
+     * @since 2.0.2
+     */
+    public boolean isLossyPng() {
+        return lossyPng;
+    }
+
+    /**
+     * Turns on / off the lossy PNG mode. After the lossless optimizations
+     * {@value #PNGQUANT_BINARY} is run with several lower qualities at the
+     * same time, and the smallest image that is similar enough to the
+     * original according to {@link SsimComparator} with the threshold
+     * {@link #getSsimThreshold()} is kept. The quality is recorded with
+     * {@link OptimizationResult#setLossyQuality(int)} and the result is not
+     * {@link OptimizationResult#isVerified() verified}.
+     *
+     * @param lossyPng If <code>true</code> then PNG images can lose
+     *                 information.
+     * @since 2.0.2
+     */
+    public void setLossyPng(final boolean lossyPng) {
+        this.lossyPng = lossyPng;
+    }
+
+    /**
+     * @return The minimum SSIM of an image created by the lossy PNG mode.
+     * @since 2.0.2
+     */
+    public double getSsimThreshold() {
+        return ssimThreshold;
+    }
+
+    /**
+     * Sets the minimum SSIM of an image created by the lossy PNG mode. A lower
+     * threshold allows smaller files with more visible differences.
+     *
+     * @param ssimThreshold A value between 0 and 1 (inclusive).
+     * @see SsimComparator#setThreshold(double)
+     * @since 2.0.2
+     */
+    public void setSsimThreshold(final double ssimThreshold) {
+        if (!(ssimThreshold >= 0) || (ssimThreshold > 1)) {
+            throw new IllegalArgumentException("The passed in ssimThreshold, " + ssimThreshold + ", needs to be between 0 and 1.");
+        }
+        this.ssimThreshold = ssimThreshold;
+    }
+
+    /**
+     * @return Which optimized PNG, JPEG and GIF images are checked to look the
+     *         same as the original.
+     * @since 2.0.2
+     */
+    public VerificationPolicy getVerificationPolicy() {
+        return verificationPolicy;
+    }
+
+    /**
+     * Sets which optimized PNG, JPEG and GIF images are checked to look the
+     * same as the original. The policy is recorded on every
+     * {@link OptimizationResult}. Images that are not checked are reported as
+     * passing the automated test.
+     *
+     * @param verificationPolicy The policy to use. Can not be
+     *                           <code>null</code>.
+     * @since 2.0.2
+     */
+    public void setVerificationPolicy(final VerificationPolicy verificationPolicy) {
+        if (verificationPolicy == null) {
+            throw new IllegalArgumentException("The passed in verificationPolicy can not be null.");
+        }
+        this.verificationPolicy = verificationPolicy;
+    }
+
+    /**
+     * @return The fraction of the optimized images checked when using
+     *         {@link VerificationPolicy#SAMPLED}.
+     * @since 2.0.2
+     */
+    public double getVerificationSampleRate() {
+        return verificationSampleRate;
+    }
+
+    /**
+     * Sets the fraction of the optimized images that are checked when using
+     * {@link VerificationPolicy#SAMPLED}.
+     *
+     * @param verificationSampleRate A value between 0 and 1 (inclusive).
+     * @since 2.0.2
+     */
+    public void setVerificationSampleRate(final double verificationSampleRate) {
+        if (!(verificationSampleRate >= 0) || (verificationSampleRate > 1)) {
+            throw new IllegalArgumentException("The passed in verificationSampleRate, " + verificationSampleRate + ", needs to be between 0 and 1.");
+        }
+        this.verificationSampleRate = verificationSampleRate;
+    }
+
+    /**
+     * @return The cache of optimization results or <code>null</code> if
+     *         caching is turned off.
+     * @since 2.0.2
+     */
+    public OptimizationCache getOptimizationCache() {
+        return optimizationCache;
+    }
+
+    /**
+     * Sets the cache used to skip optimizing images whose content was already
+     * optimized with the same settings. Entries are not invalidated when the
+     * binary applications are upgraded, so point the service at a new cache
+     * directory when that happens.
+     *
+     * @param optimizationCache The cache to use or <code>null</code> to turn
+     *                          caching off, which is the default.
+     * @since 2.0.2
+     */
+    public void setOptimizationCache(final OptimizationCache optimizationCache) {
+        this.optimizationCache = optimizationCache;
+    }
+
     /**
      * Copies the image from the working temp directory to the correct directory
      * under min where all of the optimized images will be stored.
@@ -392,35 +885,174 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         return minifiedFile;
     }
 
+    /**
+     * Finds the images that are byte for byte identical.
+     *
+     * @param files The images to check.
+     * @return Each group of identical images, in the order the first image of
+     *         each group was passed in. Images without a duplicate are not
+     *         included.
+     * @since 2.0.2
+     */
+    public List<List<File>> findDuplicateImages(final Collection<File> files) {
+        final List<List<File>> duplicateImages = new ArrayList<>();
+        if (files != null) {
+            for (final List<File> duplicates : groupByContent(files).values()) {
+                if (duplicates.size() > 1) {
+                    duplicateImages.add(duplicates);
+                }
+            }
+        }
+        return duplicateImages;
+    }
+
+    /**
+     * Hashes the content of the passed in images, in parallel, and groups the
+     * identical ones.
+     *
+     * @param files The images to group.
+     * @return The canonical images keyed by the SHA-256 of their content, in
+     *         the order they were passed in. An image that can not be read is
+     *         put in a group of its own with a key starting with
+     *         {@value #UNHASHED_PREFIX}.
+     */
+    private Map<String, List<File>> groupByContent(final Collection<File> files) {
+        final Map<File, Future<String>> hashes = new LinkedHashMap<>();
+        for (final File file : files) {
+            final File canonicalFile;
+            try {
+                canonicalFile = file.getCanonicalFile();
+            } catch (final IOException ioe) {
+                throw ImageFileOptimizationException.getInstance(file, ioe);
+            }
+            if (!hashes.containsKey(canonicalFile)) {
+                hashes.put(canonicalFile, executorService.submit(() -> HashUtils.sha256Hex(canonicalFile)));
+            }
+        }
+
+        final Map<String, List<File>> filesByContent = new LinkedHashMap<>();
+        for (final Map.Entry<File, Future<String>> entry : hashes.entrySet()) {
+            String key;
+            try {
+                key = entry.getValue().get();
+            } catch (final ExecutionException ee) {
+                logger.debug("Unable to hash " + entry.getKey() + ". It will not be checked for duplicates.", ee.getCause());
+                key = UNHASHED_PREFIX + entry.getKey().getPath();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ie);
+            }
+            filesByContent.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry.getKey());
+        }
+        return filesByContent;
+    }
+
+    /**
+     * Copies the result of optimizing the first image of each group of
+     * identical images to the location of every other image in the group.
+     *
+     * @param results The results of optimizing the first image of each group.
+     * @param groups The groups of identical images.
+     * @return All of the results, including the copies.
+     */
+    private List<OptimizationResult<C>> fanOutToDuplicates(final List<OptimizationResult<C>> results, final Collection<List<File>> groups) {
+        final Map<File, List<File>> duplicatesByFirst = new HashMap<>();
+        for (final List<File> group : groups) {
+            if (group.size() > 1) {
+                duplicatesByFirst.put(group.get(0), group.subList(1, group.size()));
+            }
+        }
+        if (duplicatesByFirst.isEmpty()) {
+            return results;
+        }
+
+        final List<OptimizationResult<C>> allResults = new ArrayList<>(results);
+        for (final OptimizationResult<C> result : results) {
+            final List<File> duplicates = duplicatesByFirst.get(result.getOriginalFile());
+            if (duplicates == null) {
+                continue;
+            }
+            for (final File duplicate : duplicates) {
+                try {
+                    final File finalFile = copyFileToMinifiedDirectory(duplicate, result.getOptimizedFile(), result.isFileTypeChanged());
+                    if (finalFile != null) {
+                        final OptimizationResult<C> duplicateResult = new OptimizationResult<>(finalFile, finalFile.length(), duplicate, result.getOriginalFileSize(), result.isFileTypeChanged(), result.getFailedAutomatedTest(), result.isBrowserSpecific());
+                        duplicateResult.setImageDescriptor(result.getImageDescriptor());
+                        duplicateResult.setVerificationPolicy(result.getVerificationPolicy());
+                        duplicateResult.setVerified(result.isVerified());
+                        duplicateResult.setLossyQuality(result.getLossyQuality());
+                        logger.info(duplicateResult.toString());
+                        allResults.add(duplicateResult);
+                    }
+                } catch (final IOException ioe) {
+                    logger.warn("Unable to copy the optimized version of " + result.getOriginalFile() + " to " + duplicate + ".", ioe);
+                }
+            }
+        }
+        return allResults;
+    }
+
     /**
      * Submits the {@link Callable} that will optimize the passed in image.
      *
      * @param file The file to optimize.
+     * @param contentHash The SHA-256 of the file's content or
+     *                    <code>null</code> if it is not known.
      * @param conversionType If and how to handle converting images from one
      *                       type to another.
      * @param tmpImageWorkingDirectory the working directory for optimizing the
      *                                 files.
+     * @param stages Receives every stage that is submitted for the image.
      * @return The list of {@link Future} for each optimization process.
      * @throws ImageFileOptimizationException Thrown if an error occurs.
      */
-    private final List<Future<OptimizationResult<C>>> submitExecuteOptimization(final CompletionService<OptimizationResult<C>> completionService, final File file, final StringBuilder tmpImageWorkingDirectory, final FileTypeConversion conversionType, final boolean includeWebPConversion) throws ImageFileOptimizationException {
+    private final List<Future<OptimizationResult<C>>> submitExecuteOptimization(final CompletionService<OptimizationResult<C>> completionService, final File file, final String contentHash, final StringBuilder tmpImageWorkingDirectory, final FileTypeConversion conversionType, final boolean includeWebPConversion, final List<AbstractImageOptimization> stages) throws ImageFileOptimizationException {
         try {
             final String ext = FilenameUtils.getExtension(file.getName()).toLowerCase();
 
             final List<Future<OptimizationResult<C>>> futures = new ArrayList<>(2);
 
+            final File masterFile = file.getCanonicalFile();
+            final OptimizationCache cache = optimizationCache;
+            final VerificationPolicy policy = verificationPolicy;
+            final double sampleRate = verificationSampleRate;
+            // The sample rate decides if a cached result was verified.
+            final String verification = (policy == VerificationPolicy.SAMPLED) ? policy.toString() + '|' + sampleRate : policy.toString();
+            final SsimComparator lossyPngComparator = lossyPng ? new SsimComparator(ssimThreshold) : null;
+            final TransparentPixels pngTransparentPixels = transparentPixels;
+
+            // The header is read once and every stage reuses what it found.
+            final ImageDescriptor descriptor = ImageProbe.probe(masterFile);
+            final String mimeType = IImageOptimizationService.getMimeType(ext);
+            if ((descriptor.getMimeType() != null) && (mimeType != null) && !descriptor.getMimeType().equals(mimeType)) {
+                // One mislabeled image does not stop the rest of the batch.
+                logger.warn("Skipping {}. Its content is {}, which does not match its file extension.", file.getPath(), descriptor.getMimeType());
+                return futures;
+            }
+
             if (PNG_EXTENSION.equals(ext)) {
-                futures.add(completionService.submit(new ExecutePngOptimization(file.getCanonicalFile(), new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType)));
+                futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, PNG_EXTENSION + '|' + verification + '|' + pngTransparentPixels + ((lossyPngComparator == null) ? "" : "|lossy|" + lossyPngComparator.getThreshold()), new ExecutePngOptimization(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType, pngTransparentPixels, lossyPngComparator))));
                 if (includeWebPConversion) {
-                    futures.add(completionService.submit(new ExecuteWebpConversion(file.getCanonicalFile(), new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.WEBP_EXTENSION).append(file.getCanonicalPath()).toString()), false)));
+                    futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, WEBP_EXTENSION, new ExecuteWebpConversion(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.WEBP_EXTENSION).append(file.getCanonicalPath()).toString()), false, animatedWebPCompression, animatedWebPQuality))));
+                }
+                if (includeAvifConversion) {
+                    futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, AVIF_EXTENSION + '|' + avifSpeed + '|' + avifQuality + '|' + avifLossless, new ExecuteAvifConversion(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.AVIF_EXTENSION).append(file.getCanonicalPath()).toString()), avifSpeed, avifQuality, avifLossless))));
                 }
             } else if (GIF_EXTENSION.equals(ext)) {
-                futures.add(completionService.submit(new ExecuteGifOptimization(file.getCanonicalFile(), new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType)));
+                futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, GIF_EXTENSION + '|' + conversionType + '|' + verification, new ExecuteGifOptimization(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType))));
                 if (includeWebPConversion) {
-                    futures.add(completionService.submit(new ExecuteWebpConversion(file.getCanonicalFile(), new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.WEBP_EXTENSION).append(file.getCanonicalPath()).toString()), true)));
+                    futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, WEBP_EXTENSION + '|' + animatedWebPCompression + '|' + animatedWebPQuality, new ExecuteWebpConversion(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.WEBP_EXTENSION).append(file.getCanonicalPath()).toString()), true, animatedWebPCompression, animatedWebPQuality))));
                 }
             } else if (JPEG_EXTENSION.equals(ext) || JPEG_EXTENSION2.equals(ext) || JPEG_EXTENSION3.equals(ext)) {
-                futures.add(completionService.submit(new ExecuteJpegOptimization(file.getCanonicalFile(), new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType)));
+                futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, JPEG_EXTENSION + '|' + verification, new ExecuteJpegOptimization(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString()), conversionType))));
+                if (includeAvifConversion) {
+                    futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, AVIF_EXTENSION + '|' + avifSpeed + '|' + avifQuality + '|' + avifLossless, new ExecuteAvifConversion(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.AVIF_EXTENSION).append(file.getCanonicalPath()).toString()), avifSpeed, avifQuality, avifLossless))));
+                }
+                if (includeJxlConversion) {
+                    futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, JXL_EXTENSION, new ExecuteJxlConversion(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(IImageOptimizationService.JXL_EXTENSION).append(file.getCanonicalPath()).toString())))));
+                }
+            } else if (SVG_EXTENSION.equals(ext)) {
+                futures.add(completionService.submit(wrapOptimization(stages, cache, masterFile, contentHash, descriptor, policy, sampleRate, SVG_EXTENSION, new ExecuteSvgOptimization(masterFile, new File(new StringBuilder(tmpImageWorkingDirectory).append(file.getCanonicalPath()).toString())))));
             } else {
                 throw new IllegalArgumentException("The passed in file has an unsupported file extension.");
             }
@@ -506,24 +1138,73 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
      */
     @Override
     public List<OptimizationResult<C>> optimizeAllImages(final FileTypeConversion conversionType, final boolean includeWebPConversion, final Collection<File> files) throws ImageFileOptimizationException, TimeoutException {
-        if ((files == null) || files.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        final CompletionService<OptimizationResult<C>> completionService = new ExecutorCompletionService<>(executorService);
+        return optimizeAllImages(conversionType, includeWebPConversion, files, null);
+    }
 
-        int i = 0;
-        final Date start = new Date();
-        final long time = System.nanoTime();
+    /**
+     * Optimizes all of the passed in images and reports the images that could
+     * not be made any smaller. This process is multi-threaded so that the
+     * number of threads is equal to the number of CPUs.
+     *
+     * @param conversionType If and how to handle converting images from one
+     *                       type to another.
+     * @param includeWebPConversion If <code>true</code> then the a WebP version
+     *                              of the image will also be generated (if it
+     *                              is smaller).
+     * @param files The images to optimize
+     * @param noSavings Receives the images for which every stage ran
+     *                  successfully but none could make them any smaller, or
+     *                  <code>null</code>. Images that failed to optimize, or
+     *                  whose result could not be copied, are not added.
+     * @return The results from the optimization. All items in the {@link List}
+     *         are considered optimized, not <code>null</code>, and will exclude
+     *         images that could not be optimized to a smaller size.
+     * @throws ImageFileOptimizationException If there are any issues optimizing
+     *                                        an image.
+     * @throws TimeoutException Happens if it takes to long to optimize an
+     *                          image.
+     * @see com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection, Collection)
+     */
+    @Override
+    public List<OptimizationResult<C>> optimizeAllImages(final FileTypeConversion conversionType, final boolean includeWebPConversion, final Collection<File> files, final Collection<File> noSavings) throws ImageFileOptimizationException, TimeoutException {
+        if ((files == null) || files.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final CompletionService<OptimizationResult<C>> completionService = new ExecutorCompletionService<>(executorService);
+
+        int i = 0;
+        final Date start = new Date();
+        final long time = System.nanoTime();
+
+        // Byte for byte identical images are only optimized once.
+        final Map<String, List<File>> filesByContent = groupByContent(files);
+        for (final List<File> duplicates : filesByContent.values()) {
+            if (duplicates.size() > 1) {
+                logger.info("Found {} identical images, only the first is optimized: {}", Integer.valueOf(duplicates.size()), duplicates);
+            }
+        }
 
         final ArrayList<Future<OptimizationResult<C>>> futures = new ArrayList<>();
-        for (final File file : files) {
-            futures.addAll(submitExecuteOptimization(completionService, file, new StringBuilder(tmpWorkingDirectory.getAbsolutePath()).append(File.separatorChar).append("scratch").append(time).append(i), conversionType, includeWebPConversion));
+        final Map<List<File>, List<AbstractImageOptimization>> stagesByGroup = new IdentityHashMap<>();
+        for (final Map.Entry<String, List<File>> entry : filesByContent.entrySet()) {
+            final String contentHash = entry.getKey().startsWith(UNHASHED_PREFIX) ? null : entry.getKey();
+            final List<AbstractImageOptimization> stages = new ArrayList<>(2);
+            stagesByGroup.put(entry.getValue(), stages);
+            futures.addAll(submitExecuteOptimization(completionService, entry.getValue().get(0), contentHash, new StringBuilder(tmpWorkingDirectory.getAbsolutePath()).append(File.separatorChar).append("scratch").append(time).append(i), conversionType, includeWebPConversion, stages));
             i++;
         }
         futures.trimToSize();
 
-        final List<OptimizationResult<C>> optimizedFiles = optimizeGroupOfImages(completionService, futures);
+        final List<OptimizationResult<C>> optimizedFiles = fanOutToDuplicates(optimizeGroupOfImages(completionService, futures), filesByContent.values());
+        if (noSavings != null) {
+            // A stage that returned a result or failed did not set noSavings.
+            for (final Map.Entry<List<File>, List<AbstractImageOptimization>> entry : stagesByGroup.entrySet()) {
+                if (!entry.getValue().isEmpty() && entry.getValue().stream().allMatch(stage -> stage.noSavings)) {
+                    noSavings.addAll(entry.getKey());
+                }
+            }
+        }
         logger.info("Image optimization elapsed time: " + (new Date().getTime() - start.getTime()));
 
         return optimizedFiles;
@@ -685,6 +1366,88 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         return workingFile;
     }
 
+    /**
+     * Executes the binary {@value #PNGQUANT_BINARY} once for each of the
+     * {@link #LOSSY_PNG_QUALITY_FLOORS} at the same time. The smallest image
+     * that is smaller than the input and similar enough to the original
+     * replaces the input. The first process runs on the budget of the task,
+     * every other one needs one of the {@link #lossyPngquantPermits}, so at
+     * most {@link #MAX_NUMBER_OF_THREADS} extra processes run across all
+     * tasks.
+     *
+     * @param masterFile The original image the candidates are compared with.
+     * @param workingFile The file to optimize
+     * @param comparator Decides if a candidate is similar enough.
+     * @param decodedImages The cache of the current task or <code>null</code>.
+     * @return The quality floor of the image that replaced the input or
+     *         <code>-1</code> if none did.
+     * @throws InterruptedException If the optimization was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if the
+     *                                           {@value #PNGQUANT_BINARY}
+     *                                           application does not exist.
+     */
+    final int executeLossyPngquant(final File masterFile, final File workingFile, final SsimComparator comparator, final DecodedImageCache decodedImages) throws InterruptedException, ThirdPartyBinaryNotFoundException {
+        final Process[] processes = new Process[LOSSY_PNG_QUALITY_FLOORS.length];
+        final File[] candidates = new File[LOSSY_PNG_QUALITY_FLOORS.length];
+        try {
+            for (int i = 0; i < LOSSY_PNG_QUALITY_FLOORS.length; i++) {
+                final int floor = LOSSY_PNG_QUALITY_FLOORS[i];
+                candidates[i] = new File(workingFile.getParentFile(), FilenameUtils.getBaseName(workingFile.getName()) + ".q" + floor + '.' + PNG_EXTENSION);
+                final boolean extra = i > 0;
+                if (extra) {
+                    lossyPngquantPermits.acquire();
+                }
+                try {
+                    processes[i] = new ProcessBuilder(List.of(pngquantBinaryPath, "--quality=" + floor + '-' + Math.min(100, floor + 10), "-s1", "--force", "--output", candidates[i].getName(), "--", workingFile.getName()))
+                        .directory(workingFile.getParentFile())
+                        .redirectErrorStream(true)
+                        .start();
+                } catch (final IOException ioe) {
+                    if (extra) {
+                        lossyPngquantPermits.release();
+                    }
+                    throw new ThirdPartyBinaryNotFoundException(PNGQUANT_BINARY, ioe);
+                }
+                if (extra) {
+                    processes[i].onExit().thenRun(lossyPngquantPermits::release);
+                }
+            }
+
+            final List<Integer> smallerCandidates = new ArrayList<>(candidates.length);
+            for (int i = 0; i < processes.length; i++) {
+                // 99 means the quality floor could not be reached.
+                if ((waitFor(processes[i]) == 0) && (candidates[i].length() > 0) && (candidates[i].length() < workingFile.length())) {
+                    smallerCandidates.add(Integer.valueOf(i));
+                }
+            }
+            // A lower floor does not always create a smaller image, so the
+            // candidates are compared from the smallest up.
+            smallerCandidates.sort((i1, i2) -> Long.compare(candidates[i1.intValue()].length(), candidates[i2.intValue()].length()));
+
+            for (final Integer i : smallerCandidates) {
+                final File candidate = candidates[i.intValue()];
+                try {
+                    if (comparator.isSimilar(masterFile, candidate, decodedImages)) {
+                        Files.move(candidate.toPath(), workingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        return LOSSY_PNG_QUALITY_FLOORS[i.intValue()];
+                    }
+                } catch (final IOException ioe) {
+                    logger.debug("Unable to compare " + candidate + " with " + masterFile + ". Skipping it.", ioe);
+                }
+            }
+            return -1;
+        } finally {
+            for (int i = 0; i < processes.length; i++) {
+                if (processes[i] != null) {
+                    processes[i].destroy();
+                }
+                if (candidates[i] != null) {
+                    candidates[i].delete();
+                }
+            }
+        }
+    }
+
     /**
      * Executes the binary {@value #OPTIPNG_BINARY} to optimize the input file.
      *
@@ -863,11 +1626,40 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
      *                                           application does not exist.
      */
     final File executeGif2Webp(final File workingFile, final String workingFilePath) throws InterruptedException, ThirdPartyBinaryNotFoundException {
+        return executeGif2Webp(workingFile, workingFilePath, AnimatedWebPCompression.LOSSLESS, animatedWebPQuality);
+    }
+
+    /**
+     * Executes the binary {@value #GIF2WEBP_BINARY} to convert the input file
+     * to a smaller file. The resulting image is only supported by Chrome and
+     * Opera. Animated GIFs are converted to animated WebPs.
+     *
+     * @param workingFile The file to convert
+     * @param workingFilePath The path to the file to convert
+     * @param compression How the frames are encoded.
+     * @param quality The quality factor (0 - 100) used for lossy frames.
+     *                Ignored when the compression is
+     *                {@link AnimatedWebPCompression#LOSSLESS}.
+     * @return The converted file
+     * @throws InterruptedException If the optimization was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if the
+     *                                           {@value #GIF2WEBP_BINARY}
+     *                                           application does not exist.
+     */
+    final File executeGif2Webp(final File workingFile, final String workingFilePath, final AnimatedWebPCompression compression, final int quality) throws InterruptedException, ThirdPartyBinaryNotFoundException {
         final String webpFilePath = FilenameUtils.removeExtension(workingFilePath) + "." + WEBP_EXTENSION;
 
+        final List<String> command = new ArrayList<>(List.of(gif2webpBinaryPath, workingFilePath));
+        if (compression == AnimatedWebPCompression.LOSSY) {
+            command.addAll(List.of("-lossy", "-q", String.valueOf(quality)));
+        } else if (compression == AnimatedWebPCompression.MIXED) {
+            command.addAll(List.of("-mixed", "-q", String.valueOf(quality)));
+        }
+        command.addAll(List.of("-m", "6", "-o", webpFilePath));
+
         final Process ps;
         try {
-            ps = new ProcessBuilder(List.of(gif2webpBinaryPath, workingFilePath, "-m", "6", "-o", webpFilePath))
+            ps = new ProcessBuilder(command)
                 .redirectErrorStream(true)
                 .start();
         } catch (final IOException ioe) {
@@ -886,158 +1678,667 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         return webpFile;
     }
 
-    private final class ExecutePngOptimization implements Callable<OptimizationResult<C>> {
+    /**
+     * Executes the binary {@value #AVIFENC_BINARY} to convert the input file to
+     * a smaller file. The resulting image is only supported by browsers with
+     * AVIF support.
+     *
+     * @param workingFile The file to convert
+     * @param workingFilePath The path to the file to convert
+     * @param speed The encoder speed (0 - 10).
+     * @param quality The quality (0 - 100). Ignored if lossless is
+     *                <code>true</code>.
+     * @param lossless If <code>true</code> then the image is encoded
+     *                 losslessly.
+     * @return The converted file
+     * @throws InterruptedException If the optimization was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if the
+     *                                           {@value #AVIFENC_BINARY}
+     *                                           application does not exist.
+     */
+    final File executeAvifenc(final File workingFile, final String workingFilePath, final int speed, final int quality, final boolean lossless) throws InterruptedException, ThirdPartyBinaryNotFoundException {
+        final String avifFilePath = FilenameUtils.removeExtension(workingFilePath) + "." + AVIF_EXTENSION;
+
+        // Each conversion gets a single encoder thread because the images are
+        // already being converted in parallel.
+        final List<String> command = new ArrayList<>(List.of(avifencBinaryPath, "--jobs", "1", "--speed", String.valueOf(speed)));
+        if (lossless) {
+            command.add("--lossless");
+        } else {
+            command.addAll(List.of("-q", String.valueOf(quality)));
+        }
+        command.addAll(List.of(workingFilePath, avifFilePath));
 
-        private final File masterFile;
-        private final File workingFile;
-        //TODO Support type conversions.
-        private final FileTypeConversion conversionType;
+        final Process ps;
+        try {
+            ps = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+        } catch (final IOException ioe) {
+            throw new ThirdPartyBinaryNotFoundException(AVIFENC_BINARY, ioe);
+        }
 
-        /**
-         * @param masterFile The original image.
-         * @param workingFile The tmp file to optimize.
-         * @param conversionType If and how to handle converting images from one
-         *                       type to another.
-         */
-        public ExecutePngOptimization(final File masterFile, final File workingFile, final FileTypeConversion conversionType) {
-            this.workingFile = workingFile;
-            this.masterFile = masterFile;
-            this.conversionType = conversionType;
+        File avifFile = null;
+        if (waitFor(ps) == 0) {
+            avifFile = new File(avifFilePath);
+            if (avifFile.exists()) {
+                return avifFile;
+            }
         }
+        handleOptimizationFailure(ps, AVIFENC_BINARY, workingFile);
 
-        /**
-         * @see java.util.concurrent.Callable#call()
-         */
-        @Override
-        public OptimizationResult<C> call() {
+        return avifFile;
+    }
 
-            File optimizedFile = null;
-            try {
-                FixedFileUtils.copyFile(masterFile, workingFile);
+    /**
+     * Executes the binary {@value #CJXL_BINARY} to losslessly transcode the
+     * input JPEG to JPEG XL. The data needed to reconstruct the original JPEG
+     * is kept in the resulting file.
+     *
+     * @param workingFile The file to convert
+     * @param workingFilePath The path to the file to convert
+     * @return The converted file
+     * @throws InterruptedException If the optimization was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if the
+     *                                           {@value #CJXL_BINARY}
+     *                                           application does not exist.
+     */
+    final File executeCjxl(final File workingFile, final String workingFilePath) throws InterruptedException, ThirdPartyBinaryNotFoundException {
+        final String jxlFilePath = FilenameUtils.removeExtension(workingFilePath) + "." + JXL_EXTENSION;
 
-                optimizedFile = executeOptimization();
+        final Process ps;
+        try {
+            ps = new ProcessBuilder(List.of(cjxlBinaryPath, workingFilePath, jxlFilePath, "--lossless_jpeg=1", "--num_threads=0"))
+                .redirectErrorStream(true)
+                .start();
+        } catch (final IOException ioe) {
+            throw new ThirdPartyBinaryNotFoundException(CJXL_BINARY, ioe);
+        }
 
-                final long masterFileSize = masterFile.length();
+        File jxlFile = null;
+        if (waitFor(ps) == 0) {
+            jxlFile = new File(jxlFilePath);
+            if (jxlFile.exists()) {
+                return jxlFile;
+            }
+        }
+        handleOptimizationFailure(ps, CJXL_BINARY, workingFile);
 
-                if (optimizedFile.length() < masterFileSize) {
+        return jxlFile;
+    }
 
-                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, false);
-                    if (finalFile == null) {
-                        return null;
-                    }
-                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, false, !ImageUtils.visuallyCompare(optimizedFile, masterFile), false);
-                }
-            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
-                throw tpbnfe;
-            } catch (final Exception e) {
-                logger.warn(PNG_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
-            } finally {
-                if (optimizedFile != null) {
-                    try {
-                        FileUtils.forceDelete(optimizedFile.getParentFile());
-                    } catch (final IOException ioe) {
-                        logger.warn("Error deleting temp file.", ioe);
-                    }
-                }
+    /**
+     * Executes the binary {@value #DJXL_BINARY} to reconstruct the original
+     * JPEG from a JPEG XL file created by
+     * {@link #executeCjxl(File, String)}.
+     *
+     * @param jxlFile The JPEG XL file to decode
+     * @param jxlFilePath The path to the JPEG XL file
+     * @return The reconstructed JPEG
+     * @throws InterruptedException If the decoding was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if the
+     *                                           {@value #DJXL_BINARY}
+     *                                           application does not exist.
+     */
+    final File executeDjxl(final File jxlFile, final String jxlFilePath) throws InterruptedException, ThirdPartyBinaryNotFoundException {
+        final String jpegFilePath = jxlFilePath + "." + JPEG_EXTENSION;
+
+        final Process ps;
+        try {
+            ps = new ProcessBuilder(List.of(djxlBinaryPath, jxlFilePath, jpegFilePath, "--num_threads=0"))
+                .redirectErrorStream(true)
+                .start();
+        } catch (final IOException ioe) {
+            throw new ThirdPartyBinaryNotFoundException(DJXL_BINARY, ioe);
+        }
+
+        File jpegFile = null;
+        if (waitFor(ps) == 0) {
+            jpegFile = new File(jpegFilePath);
+            if (jpegFile.exists()) {
+                return jpegFile;
             }
-            return null;
         }
+        handleOptimizationFailure(ps, DJXL_BINARY, jxlFile);
 
-        /**
-         * Executes the PNGOut, OptiPNG, and AdvPNG optimization programs on the
-         * working file passed into the constructor.
-         *
-         * @return The optimized file.
-         * @throws IOException If there was an issue reading / writing to the
-         *                     file system
-         * @throws InterruptedException If the optimization was interrupted.
-         */
-        public File executeOptimization() throws IOException, InterruptedException {
-            final String path = workingFile.getCanonicalPath();
-            // FIXME Handle the ImageFileOptimizationException in one of the optimizations so it does not impact the other optimizations.
-            return executePngquant(executeOptipng(executePngout(executeAdvpng(executePngquant(executeOptipng(executePngout(executeAdvpng(workingFile, path), path), path), path), path), path), path), path);
+        return jpegFile;
+    }
+
+    /**
+     * Wraps the passed in optimization so its result is looked up in and
+     * stored to the passed in cache, and so concurrent requests for the same
+     * image and stage share one run.
+     *
+     * @param stages Receives the passed in optimization.
+     * @param cache The cache or <code>null</code> if caching is turned off.
+     * @param masterFile The original image.
+     * @param contentHash The SHA-256 of the original image's content or
+     *                    <code>null</code> if it is not known.
+     * @param descriptor The description of the original image, which is
+     *                   attached to the result.
+     * @param policy Decides if the optimized image is checked. It is attached
+     *               to the result.
+     * @param sampleRate The share of the optimized images that are checked
+     *                   when the policy is {@link VerificationPolicy#SAMPLED}.
+     * @param configuration Identifies the stage and all of its settings that
+     *                      affect the output.
+     * @param optimization The optimization to run on a cache miss.
+     * @return The {@link Callable} to submit.
+     */
+    private Callable<OptimizationResult<C>> wrapOptimization(final List<AbstractImageOptimization> stages, final OptimizationCache cache, final File masterFile, final String contentHash, final ImageDescriptor descriptor, final VerificationPolicy policy, final double sampleRate, final String configuration, final AbstractImageOptimization optimization) {
+        stages.add(optimization);
+        optimization.descriptor = descriptor;
+        optimization.contentHash = contentHash;
+        optimization.verificationPolicy = policy;
+        optimization.verificationSampleRate = sampleRate;
+        final Callable<OptimizationResult<C>> cached = (cache == null) ? optimization : new CachedOptimization(cache, masterFile, contentHash, configuration, optimization);
+        final Callable<OptimizationResult<C>> callable = () -> {
+            final OptimizationResult<C> result = cached.call();
+            if (result != null) {
+                result.setImageDescriptor(descriptor);
+                result.setVerificationPolicy(policy);
+            }
+            return result;
+        };
+        if (contentHash == null) {
+            return callable;
         }
+        return new SingleFlightOptimization(masterFile.getPath() + '\n' + contentHash + '\n' + configuration, optimization, callable);
     }
 
-    private final class ExecuteJpegOptimization implements Callable<OptimizationResult<C>> {
+    /**
+     * {@link Callable} that lets concurrent requests to run the same stage on
+     * the same image share one run. The first request to start runs the
+     * stage; any request for the same key that starts before it finishes waits
+     * for and returns the same result, and its stage gets the same outcome.
+     * The key is only registered while the stage is running.
+     *
+     * @since 2.0.2
+     */
+    private final class SingleFlightOptimization implements Callable<OptimizationResult<C>> {
 
-        private final File masterFile;
-        private final File workingFile;
-        //TODO Support type conversions
-        private final FileTypeConversion conversionType;
+        private final String key;
+        private final AbstractImageOptimization stage;
+        private final Callable<OptimizationResult<C>> optimization;
 
         /**
-         * @param masterFile The original image
-         * @param workingFile The copy of the file to optimize
-         * @param conversionType If and how to handle converting images from one
-         *                       type to another.
+         * @param key The canonical path, content hash and stage configuration
+         *            of the optimization.
+         * @param stage The stage that is run by the passed in optimization.
+         * @param optimization The optimization to run.
          */
-        public ExecuteJpegOptimization(final File masterFile, final File workingFile, final FileTypeConversion conversionType) {
-            this.workingFile = workingFile;
-            this.masterFile = masterFile;
-            this.conversionType = conversionType;
+        public SingleFlightOptimization(final String key, final AbstractImageOptimization stage, final Callable<OptimizationResult<C>> optimization) {
+            this.key = key;
+            this.stage = stage;
+            this.optimization = optimization;
         }
 
         /**
          * @see java.util.concurrent.Callable#call()
          */
         @Override
-        public OptimizationResult<C> call() {
+        public OptimizationResult<C> call() throws Exception {
+            final InFlightOptimization task = new InFlightOptimization(stage, optimization);
+            final InFlightOptimization inFlight = inFlightOptimizations.putIfAbsent(key, task);
+            if (inFlight == null) {
+                try {
+                    task.run();
+                } finally {
+                    inFlightOptimizations.remove(key, task);
+                }
+                return getResult(task);
+            }
+            logger.debug("Waiting for the optimization of the same image that is already running: {}", key);
+            final OptimizationResult<C> result = getResult(inFlight);
+            // This stage never ran, so it reports what the one that did found.
+            stage.noSavings = inFlight.stage.noSavings;
+            return result;
+        }
 
-            File optimizedFile = null;
+        private OptimizationResult<C> getResult(final FutureTask<OptimizationResult<C>> task) throws Exception {
             try {
-                FixedFileUtils.copyFile(masterFile, workingFile);
-
-                optimizedFile = executeJpegtran(workingFile, workingFile.getCanonicalPath());
-                optimizedFile = executeJfifremove(optimizedFile, optimizedFile.getCanonicalPath());
-
-                final long masterFileSize = masterFile.length();
-
-                if (optimizedFile.length() < masterFileSize) {
-                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, false);
-                    if (finalFile == null) {
-                        return null;
-                    }
-
-                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, false, !ImageUtils.visuallyCompare(finalFile, masterFile), false);
-                }
-            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
-                throw tpbnfe;
-            } catch (final Exception e) {
-                logger.warn(JPEG_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
-            } finally {
-                if (optimizedFile != null) {
-                    try {
-                        FileUtils.forceDelete(optimizedFile.getParentFile());
-                    } catch (final IOException ioe) {
-                        logger.warn("Error deleting temp file.", ioe);
-                    }
+                return task.get();
+            } catch (final ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception)cause;
                 }
+                throw ee;
             }
-            return null;
         }
     }
 
-    private final class ExecuteWebpConversion implements Callable<OptimizationResult<C>> {
+    /**
+     * The run of a stage that other requests for the same image and stage can
+     * wait for.
+     *
+     * @since 2.0.2
+     */
+    private final class InFlightOptimization extends FutureTask<OptimizationResult<C>> {
 
-        private final File masterFile;
-        private final File workingFile;
-        private final boolean isGif;
+        final AbstractImageOptimization stage;
 
         /**
-         * @param masterFile The original image
-         * @param workingFile The copy of the file to optimize
-         * @param isGif If <code>true</code> then use
-         *              {@link ImageOptimizationService#executeGif2Webp(File, String)}
-         *              to convert the file to WebP. If <code>false</code> then
-         *              use
-         *              {@link ImageOptimizationService#executeCWebp(File, String)}
-         *              to convert the image to WebP.
+         * @param stage The stage that is run by the passed in optimization.
+         * @param optimization The optimization to run.
          */
-        public ExecuteWebpConversion(final File masterFile, final File workingFile, final boolean isGif) {
-            this.workingFile = workingFile;
+        InFlightOptimization(final AbstractImageOptimization stage, final Callable<OptimizationResult<C>> optimization) {
+            super(optimization);
+            this.stage = stage;
+        }
+    }
+
+    /**
+     * Base class of the {@link Callable}s that optimize or convert a single
+     * image.
+     *
+     * @since 2.0.2
+     */
+    private abstract class AbstractImageOptimization implements Callable<OptimizationResult<C>> {
+
+        /**
+         * Set when the optimization ran successfully but could not make the
+         * image any smaller. Not set when <code>null</code> is returned
+         * because of an error.
+         */
+        boolean noSavings;
+
+        /**
+         * The description of the original image read from its header, or
+         * <code>null</code> if it is not known.
+         */
+        ImageDescriptor descriptor;
+
+        /**
+         * The SHA-256 of the original image's content or <code>null</code> if
+         * it is not known.
+         */
+        String contentHash;
+
+        /**
+         * Decides if {@link #verify(File, File)} checks the optimized image.
+         */
+        VerificationPolicy verificationPolicy = VerificationPolicy.ALWAYS;
+
+        /**
+         * The share of the optimized images that are checked when the
+         * {@link #verificationPolicy} is {@link VerificationPolicy#SAMPLED}.
+         */
+        double verificationSampleRate;
+
+        /**
+         * Set when a stage that can lose information made the image smaller.
+         */
+        boolean lossyStageChanged;
+
+        /**
+         * The quality floor of the lossy PNG mode that created the image, or
+         * <code>-1</code> if it is lossless.
+         */
+        int lossyQuality = -1;
+
+        /**
+         * The automated validation started by {@link #verify(File, File)}, or
+         * <code>null</code> if none was started.
+         */
+        CompletableFuture<Boolean> verification;
+
+        /**
+         * Creates the result of a stage that keeps the type of the image and
+         * starts its automated validation.
+         *
+         * @param masterFile The original image.
+         * @param masterFileSize The size of the original image.
+         * @param finalFile The optimized image in the final results directory.
+         * @return The result.
+         */
+        OptimizationResult<C> createVerifiedResult(final File masterFile, final long masterFileSize, final File finalFile) {
+            if (lossyQuality >= 0) {
+                // Only gated by its SSIM, it would fail the pixel by pixel
+                // check, so it is not verified.
+                final OptimizationResult<C> result = new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, false, false, false);
+                result.setLossyQuality(lossyQuality);
+                return result;
+            }
+            final OptimizationResult<C> result = new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, false, verify(masterFile, finalFile), false);
+            result.setVerified(verification != null);
+            return result;
+        }
+
+        /**
+         * @return <code>true</code> if the {@link #verificationPolicy} requires
+         *         the optimized image to be checked.
+         */
+        private boolean isVerificationRequired() {
+            switch (verificationPolicy) {
+                case ALWAYS:
+                    return true;
+                case SAMPLED:
+                    return ThreadLocalRandom.current().nextDouble() < verificationSampleRate;
+                case LOSSY_STAGES_ONLY:
+                    return lossyStageChanged;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Starts checking that the optimized image looks the same as the
+         * original on the {@link #verificationExecutorService}, if the
+         * {@link #verificationPolicy} requires it. Both files must not be
+         * deleted by the optimization.
+         *
+         * @param masterFile The original image.
+         * @param optimizedFile The optimized image.
+         * @return Completes with <code>true</code> if the optimized image
+         *         failed the check or could not be checked.
+         */
+        Future<Boolean> verify(final File masterFile, final File optimizedFile) {
+            if (!isVerificationRequired()) {
+                return CompletableFuture.completedFuture(Boolean.FALSE);
+            }
+            return startVerification(masterFile, optimizedFile);
+        }
+
+        /**
+         * Starts checking that the optimized image looks the same as the
+         * original on the {@link #verificationExecutorService} regardless of
+         * the {@link #verificationPolicy}.
+         *
+         * @param masterFile The original image.
+         * @param optimizedFile The optimized image.
+         * @return Completes with <code>true</code> if the optimized image
+         *         failed the check or could not be checked.
+         */
+        Future<Boolean> startVerification(final File masterFile, final File optimizedFile) {
+            verification = CompletableFuture.supplyAsync(() -> {
+                final DecodedImageCache decodedImages = new DecodedImageCache();
+                try {
+                    return Boolean.valueOf(!isVisuallyTheSame(masterFile, optimizedFile, decodedImages));
+                } catch (final RuntimeException e) {
+                    logger.warn("Unable to compare " + optimizedFile + " with " + masterFile + ". Manual comparison required.", e);
+                    return Boolean.TRUE;
+                } finally {
+                    decodedImages.clear();
+                }
+            }, verificationExecutorService);
+            return verification;
+        }
+
+        /**
+         * Checks that the optimized image looks the same as the original by
+         * comparing their {@link PixelDigest}s. The digest of the original is
+         * only calculated once.
+         *
+         * @param masterFile The original image.
+         * @param optimizedFile The optimized image.
+         * @param decodedImages The cache of the current task or
+         *                      <code>null</code>.
+         * @return <code>true</code> if both images are visually the same.
+         */
+        boolean isVisuallyTheSame(final File masterFile, final File optimizedFile, final DecodedImageCache decodedImages) {
+            final String masterDigest = getMasterPixelDigest(masterFile, contentHash);
+            if (masterDigest != null) {
+                try {
+                    if (masterDigest.equals(PixelDigest.digest(optimizedFile))) {
+                        return true;
+                    }
+                    // ImageIO decodes some GIFs differently than browsers do,
+                    // so only a difference between GIFs needs a second look.
+                    if (!GIF_EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(masterFile.getName()))
+                            && !GIF_EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(optimizedFile.getName()))) {
+                        logger.info("The files \"{}\" and \"{}\" are not pixel by pixel the same image. Manual comparison required.", masterFile.getPath(), optimizedFile.getPath());
+                        return false;
+                    }
+                } catch (final IOException | RuntimeException e) {
+                    logger.debug("Unable to calculate the pixel digest of " + optimizedFile + ".", e);
+                }
+            }
+            return ImageUtils.visuallyCompare(masterFile, optimizedFile, decodedImages);
+        }
+    }
+
+    /**
+     * Gets the {@link PixelDigest} of an original image from memory, from the
+     * {@link OptimizationCache} or by calculating and storing it.
+     *
+     * @param masterFile The original image.
+     * @param contentHash The SHA-256 of the original image's content or
+     *                    <code>null</code> if it is not known.
+     * @return The digest or <code>null</code> if it can not be calculated.
+     */
+    private String getMasterPixelDigest(final File masterFile, final String contentHash) {
+        final String key = (contentHash != null) ? contentHash : (masterFile.getPath() + '|' + masterFile.length() + '|' + masterFile.lastModified());
+        String digest = masterPixelDigests.get(key);
+        if (digest != null) {
+            return digest;
+        }
+
+        final OptimizationCache cache = (contentHash == null) ? null : optimizationCache;
+        if (cache != null) {
+            digest = cache.getPixelDigest(contentHash);
+        }
+        if (digest == null) {
+            try {
+                digest = PixelDigest.digest(masterFile);
+            } catch (final IOException | RuntimeException e) {
+                logger.debug("Unable to calculate the pixel digest of " + masterFile + ".", e);
+                return null;
+            }
+            if (cache != null) {
+                try {
+                    cache.putPixelDigest(contentHash, digest);
+                } catch (final IOException ioe) {
+                    logger.warn("Unable to store the pixel digest of " + masterFile + " in the optimization cache.", ioe);
+                }
+            }
+        }
+        masterPixelDigests.put(key, digest);
+        return digest;
+    }
+
+    /**
+     * {@link Callable} that returns the result from the
+     * {@link OptimizationCache} when the same content was already optimized
+     * with the same settings and otherwise runs the wrapped optimization and
+     * stores its result.
+     *
+     * @since 2.0.2
+     */
+    private final class CachedOptimization implements Callable<OptimizationResult<C>> {
+
+        private final OptimizationCache cache;
+        private final File masterFile;
+        private final String contentHash;
+        private final String configuration;
+        private final AbstractImageOptimization optimization;
+
+        /**
+         * @param cache The cache.
+         * @param masterFile The original image.
+         * @param contentHash The SHA-256 of the original image's content or
+         *                    <code>null</code> if it needs to be calculated.
+         * @param configuration Identifies the stage and all of its settings
+         *                      that affect the output.
+         * @param optimization The optimization to run on a cache miss.
+         */
+        public CachedOptimization(final OptimizationCache cache, final File masterFile, final String contentHash, final String configuration, final AbstractImageOptimization optimization) {
+            this.cache = cache;
             this.masterFile = masterFile;
-            this.isGif = isGif;
+            this.contentHash = contentHash;
+            this.configuration = configuration;
+            this.optimization = optimization;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() throws Exception {
+            final String key;
+            try {
+                key = (contentHash == null) ? cache.getKey(masterFile, configuration) : OptimizationCache.getKeyForHash(contentHash, configuration);
+            } catch (final IOException ioe) {
+                logger.warn("Unable to hash " + masterFile + ". Skipping the optimization cache.", ioe);
+                return optimization.call();
+            }
+
+            final OptimizationCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                try {
+                    return restore(entry);
+                } catch (final IOException ioe) {
+                    // Most likely the entry was evicted while it was being
+                    // copied. Fall back to optimizing the image.
+                    logger.debug("Unable to copy the cached result for " + masterFile, ioe);
+                }
+            }
+
+            // Other threads and JVMs sharing the cache wait for this result
+            // instead of optimizing the same content at the same time.
+            OptimizationCache.KeyLock lock = null;
+            try {
+                lock = cache.lock(key);
+            } catch (final IOException ioe) {
+                logger.warn("Unable to lock the optimization cache for " + masterFile + ". Optimizing without the lock.", ioe);
+            }
+            try {
+                if (lock != null) {
+                    final OptimizationCache.Entry published = cache.get(key);
+                    if (published != null) {
+                        try {
+                            return restore(published);
+                        } catch (final IOException ioe) {
+                            logger.debug("Unable to copy the cached result for " + masterFile, ioe);
+                        }
+                    }
+                }
+
+                final OptimizationResult<C> result = optimization.call();
+                if (result == null) {
+                    if (optimization.noSavings) {
+                        try {
+                            cache.putNoSavings(key);
+                        } catch (final IOException ioe) {
+                            logger.warn("Unable to store the result for " + masterFile + " in the optimization cache.", ioe);
+                        }
+                    }
+                } else if (optimization.verification == null) {
+                    store(key, result, false);
+                } else {
+                    // Published while the lock is held so the threads and JVMs
+                    // waiting for it reuse the image. The outcome of the
+                    // automated validation is added once it finishes.
+                    store(key, result, true);
+                    optimization.verification.thenRun(() -> storeVerification(key, result));
+                }
+                return result;
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+        }
+
+        /**
+         * Stores the result in the cache.
+         *
+         * @param key The cache key.
+         * @param result The result.
+         * @param verificationPending <code>true</code> if the automated
+         *                            validation of the result is still running.
+         */
+        private void store(final String key, final OptimizationResult<C> result, final boolean verificationPending) {
+            try {
+                cache.put(key, result.getOptimizedFile(), result.isFileTypeChanged(), !verificationPending && result.isFailedAutomatedTest(), !verificationPending && result.isVerified(), verificationPending, result.getLossyQuality(), result.isBrowserSpecific());
+            } catch (final IOException ioe) {
+                logger.warn("Unable to store the result for " + masterFile + " in the optimization cache.", ioe);
+            }
+        }
+
+        /**
+         * Stores the outcome of the finished automated validation of a result
+         * that was stored while it was running.
+         *
+         * @param key The cache key.
+         * @param result The result.
+         */
+        private void storeVerification(final String key, final OptimizationResult<C> result) {
+            try {
+                cache.putVerification(key, result.isFailedAutomatedTest(), result.isVerified());
+            } catch (final IOException ioe) {
+                logger.warn("Unable to store the result for " + masterFile + " in the optimization cache.", ioe);
+            }
+        }
+
+        /**
+         * Creates the result from a cache entry.
+         *
+         * @param entry The cache entry.
+         * @return The result or <code>null</code> if the image could not be
+         *         made smaller or the optimized file already exists.
+         * @throws IOException Thrown if the cached image can not be copied.
+         */
+        private OptimizationResult<C> restore(final OptimizationCache.Entry entry) throws IOException {
+            logger.debug("Optimization cache hit for {} ({}).", masterFile, configuration);
+            if (entry.isNoSavings()) {
+                optimization.noSavings = true;
+                return null;
+            }
+            final File finalFile = copyFileToMinifiedDirectory(masterFile, entry.getFile(), entry.isFileTypeChanged());
+            if (finalFile == null) {
+                return null;
+            }
+            final OptimizationResult<C> result;
+            if (entry.isVerificationPending()) {
+                // The automated validation of the cached image has not
+                // finished, so check the copy instead of trusting it.
+                result = new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFile.length(), entry.isFileTypeChanged(), optimization.startVerification(masterFile, finalFile), entry.isBrowserSpecific());
+                result.setVerified(true);
+            } else {
+                result = new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFile.length(), entry.isFileTypeChanged(), entry.isFailedAutomatedTest(), entry.isBrowserSpecific());
+                result.setVerified(entry.isVerified());
+            }
+            result.setLossyQuality(entry.getLossyQuality());
+            return result;
+        }
+    }
+
+    private final class ExecutePngOptimization extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+        //TODO Support type conversions.
+        private final FileTypeConversion conversionType;
+        private final TransparentPixels transparentPixels;
+        private final SsimComparator lossyComparator;
+
+        /**
+         * @param masterFile The original image.
+         * @param workingFile The tmp file to optimize.
+         * @param conversionType If and how to handle converting images from one
+         *                       type to another.
+         */
+        public ExecutePngOptimization(final File masterFile, final File workingFile, final FileTypeConversion conversionType) {
+            this(masterFile, workingFile, conversionType, TransparentPixels.NONE, null);
+        }
+
+        /**
+         * @param masterFile The original image.
+         * @param workingFile The tmp file to optimize.
+         * @param conversionType If and how to handle converting images from one
+         *                       type to another.
+         * @param transparentPixels How the color of 100% transparent pixels is
+         *                          rewritten before the PNG tools run.
+         * @param lossyComparator Gates the lossy PNG mode or <code>null</code>
+         *                        to only optimize losslessly.
+         */
+        public ExecutePngOptimization(final File masterFile, final File workingFile, final FileTypeConversion conversionType, final TransparentPixels transparentPixels, final SsimComparator lossyComparator) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+            this.conversionType = conversionType;
+            this.transparentPixels = transparentPixels;
+            this.lossyComparator = lossyComparator;
         }
 
         /**
@@ -1049,21 +2350,228 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
             File optimizedFile = null;
             try {
                 FixedFileUtils.copyFile(masterFile, workingFile);
+                try {
+                    PngColorReducer.reduce(workingFile, transparentPixels);
+                } catch (final IOException | RuntimeException e) {
+                    logger.debug("Unable to reduce the colors of " + masterFile + ". Ignoring.", e);
+                }
 
-                if (!isGif || !ImageUtils.isAminatedGif(workingFile)) {
+                optimizedFile = executeOptimization();
+                if (lossyComparator != null) {
+                    final DecodedImageCache decodedImages = new DecodedImageCache();
+                    try {
+                        lossyQuality = executeLossyPngquant(masterFile, optimizedFile, lossyComparator, decodedImages);
+                    } finally {
+                        decodedImages.clear();
+                    }
+                }
 
-                    optimizedFile = isGif ? executeGif2Webp(workingFile, workingFile.getCanonicalPath()) : executeCWebp(workingFile, workingFile.getCanonicalPath());
+                final long masterFileSize = masterFile.length();
 
-                    final long masterFileSize = masterFile.length();
+                if (optimizedFile.length() < masterFileSize) {
 
-                    if (optimizedFile.length() < masterFileSize) {
-                        final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, true);
-                        if (finalFile == null) {
-                            return null;
-                        }
-                        return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, true, false, true);
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, false);
+                    if (finalFile == null) {
+                        return null;
+                    }
+                    return createVerifiedResult(masterFile, masterFileSize, finalFile);
+                }
+                noSavings = true;
+            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
+                throw tpbnfe;
+            } catch (final Exception e) {
+                logger.warn(PNG_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
+            } finally {
+                if (optimizedFile != null) {
+                    try {
+                        FileUtils.forceDelete(optimizedFile.getParentFile());
+                    } catch (final IOException ioe) {
+                        logger.warn("Error deleting temp file.", ioe);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Executes the PNGOut, OptiPNG, and AdvPNG optimization programs on the
+         * working file passed into the constructor.
+         *
+         * @return The optimized file.
+         * @throws IOException If there was an issue reading / writing to the
+         *                     file system
+         * @throws InterruptedException If the optimization was interrupted.
+         */
+        public File executeOptimization() throws IOException, InterruptedException {
+            final String path = workingFile.getCanonicalPath();
+            // FIXME Handle the ImageFileOptimizationException in one of the optimizations so it does not impact the other optimizations.
+            return executeTrackedPngquant(executeOptipng(executePngout(executeAdvpng(executeTrackedPngquant(executeOptipng(executePngout(executeAdvpng(workingFile, path), path), path), path), path), path), path), path);
+        }
+
+        /**
+         * Executes {@value #PNGQUANT_BINARY} and records if it replaced the
+         * file. It only does when its output is smaller.
+         *
+         * @param file The file to optimize.
+         * @param path The path to the file to optimize.
+         * @return The optimized file.
+         * @throws InterruptedException If the optimization was interrupted.
+         */
+        private File executeTrackedPngquant(final File file, final String path) throws InterruptedException {
+            final long length = file.length();
+            final File optimizedFile = executePngquant(file, path);
+            if (optimizedFile.length() < length) {
+                lossyStageChanged = true;
+            }
+            return optimizedFile;
+        }
+    }
+
+    private final class ExecuteJpegOptimization extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+        //TODO Support type conversions
+        private final FileTypeConversion conversionType;
+
+        /**
+         * @param masterFile The original image
+         * @param workingFile The copy of the file to optimize
+         * @param conversionType If and how to handle converting images from one
+         *                       type to another.
+         */
+        public ExecuteJpegOptimization(final File masterFile, final File workingFile, final FileTypeConversion conversionType) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+            this.conversionType = conversionType;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() {
+
+            File optimizedFile = null;
+            try {
+                FixedFileUtils.copyFile(masterFile, workingFile);
+
+                optimizedFile = executeJpegtran(workingFile, workingFile.getCanonicalPath());
+                optimizedFile = executeJfifremove(optimizedFile, optimizedFile.getCanonicalPath());
+
+                final long masterFileSize = masterFile.length();
+
+                if (optimizedFile.length() < masterFileSize) {
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, false);
+                    if (finalFile == null) {
+                        return null;
+                    }
+
+                    return createVerifiedResult(masterFile, masterFileSize, finalFile);
+                }
+                noSavings = true;
+            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
+                throw tpbnfe;
+            } catch (final Exception e) {
+                logger.warn(JPEG_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
+            } finally {
+                if (optimizedFile != null) {
+                    try {
+                        FileUtils.forceDelete(optimizedFile.getParentFile());
+                    } catch (final IOException ioe) {
+                        logger.warn("Error deleting temp file.", ioe);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class ExecuteWebpConversion extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+        private final boolean isGif;
+        private final AnimatedWebPCompression animatedCompression;
+        private final int animatedQuality;
+
+        /**
+         * @param masterFile The original image
+         * @param workingFile The copy of the file to optimize
+         * @param isGif If <code>true</code> then use
+         *              {@link ImageOptimizationService#executeGif2Webp(File, String, AnimatedWebPCompression, int)}
+         *              to convert the file to WebP. If <code>false</code> then
+         *              use
+         *              {@link ImageOptimizationService#executeCWebp(File, String)}
+         *              to convert the image to WebP.
+         * @param animatedCompression How the frames of an animated GIF are
+         *                            encoded.
+         * @param animatedQuality The quality factor used for lossy frames of an
+         *                        animated GIF.
+         */
+        public ExecuteWebpConversion(final File masterFile, final File workingFile, final boolean isGif, final AnimatedWebPCompression animatedCompression, final int animatedQuality) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+            this.isGif = isGif;
+            this.animatedCompression = animatedCompression;
+            this.animatedQuality = animatedQuality;
+        }
+
+        /**
+         * Runs {@value ImageOptimizationService#GIFSICLE_BINARY} on the working
+         * file so the animated WebP can be compared against the optimized GIF
+         * instead of the original.
+         *
+         * @param workingFilePath The path to the working file.
+         * @param size The size the optimized GIF has to beat.
+         * @return The smaller of the passed in size and the optimized GIF size.
+         * @throws InterruptedException If the optimization was interrupted.
+         */
+        private long getOptimizedGifSize(final String workingFilePath, final long size) throws InterruptedException {
+            try {
+                final File gifsicleFile = executeGifsicle(workingFile, workingFilePath);
+                if (gifsicleFile.exists() && (gifsicleFile.length() < size)) {
+                    return gifsicleFile.length();
+                }
+            } catch (final ImageFileOptimizationException ifoe) {
+                logger.debug("Unable to optimize the animated GIF. Comparing the WebP against the original instead.", ifoe);
+            }
+            return size;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() {
+
+            File optimizedFile = null;
+            try {
+                FixedFileUtils.copyFile(masterFile, workingFile);
+
+                final String workingFilePath = workingFile.getCanonicalPath();
+                final long masterFileSize = masterFile.length();
+                long sizeToBeat = masterFileSize;
+
+                if (!isGif) {
+                    optimizedFile = executeCWebp(workingFile, workingFilePath);
+                } else if ((descriptor != null) ? descriptor.isAnimated() : ImageUtils.isAminatedGif(workingFile)) {
+                    // An animated WebP is only worth it if it is smaller than
+                    // what gifsicle can do with the animated GIF.
+                    sizeToBeat = getOptimizedGifSize(workingFilePath, masterFileSize);
+                    optimizedFile = executeGif2Webp(workingFile, workingFilePath, animatedCompression, animatedQuality);
+                } else {
+                    optimizedFile = executeGif2Webp(workingFile, workingFilePath);
+                }
+
+                if (optimizedFile.length() < sizeToBeat) {
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, true);
+                    if (finalFile == null) {
+                        return null;
                     }
+                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, true, false, true);
                 }
+                noSavings = true;
             } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
                 throw tpbnfe;
             } catch (final Exception e) {
@@ -1081,7 +2589,189 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         }
     }
 
-    private final class ExecuteGifOptimization implements Callable<OptimizationResult<C>> {
+    private final class ExecuteAvifConversion extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+        private final int speed;
+        private final int quality;
+        private final boolean lossless;
+
+        /**
+         * @param masterFile The original image
+         * @param workingFile The copy of the file to convert
+         * @param speed The encoder speed.
+         * @param quality The encoder quality.
+         * @param lossless If <code>true</code> then the image is encoded
+         *                 losslessly.
+         */
+        public ExecuteAvifConversion(final File masterFile, final File workingFile, final int speed, final int quality, final boolean lossless) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+            this.speed = speed;
+            this.quality = quality;
+            this.lossless = lossless;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() {
+
+            File optimizedFile = null;
+            try {
+                FixedFileUtils.copyFile(masterFile, workingFile);
+
+                optimizedFile = executeAvifenc(workingFile, workingFile.getCanonicalPath(), speed, quality, lossless);
+
+                final long masterFileSize = masterFile.length();
+
+                if (optimizedFile.length() < masterFileSize) {
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, true);
+                    if (finalFile == null) {
+                        return null;
+                    }
+                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, true, false, true);
+                }
+                noSavings = true;
+            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
+                throw tpbnfe;
+            } catch (final Exception e) {
+                logger.warn(AVIF_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
+            } finally {
+                if (optimizedFile != null) {
+                    try {
+                        FileUtils.forceDelete(optimizedFile.getParentFile());
+                    } catch (final IOException ioe) {
+                        logger.warn("Error deleting temp file.", ioe);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class ExecuteJxlConversion extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+
+        /**
+         * @param masterFile The original JPEG
+         * @param workingFile The copy of the file to transcode
+         */
+        public ExecuteJxlConversion(final File masterFile, final File workingFile) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() {
+
+            File optimizedFile = null;
+            try {
+                FixedFileUtils.copyFile(masterFile, workingFile);
+
+                optimizedFile = executeCjxl(workingFile, workingFile.getCanonicalPath());
+
+                final long masterFileSize = masterFile.length();
+
+                if (optimizedFile.length() < masterFileSize) {
+                    // The transcoding is only lossless if the original bytes
+                    // can be reconstructed exactly.
+                    final File reconstructedFile = executeDjxl(optimizedFile, optimizedFile.getCanonicalPath());
+                    final boolean bitExact = FileUtils.contentEquals(masterFile, reconstructedFile);
+                    if (!bitExact) {
+                        logger.info("The JPEG reconstructed from \"{}\" is not identical to \"{}\". Manual comparison required.", optimizedFile.getPath(), masterFile.getPath());
+                    }
+
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, true);
+                    if (finalFile == null) {
+                        return null;
+                    }
+                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, true, !bitExact, true);
+                }
+                noSavings = true;
+            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
+                throw tpbnfe;
+            } catch (final Exception e) {
+                logger.warn(JXL_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
+            } finally {
+                if (optimizedFile != null) {
+                    try {
+                        FileUtils.forceDelete(optimizedFile.getParentFile());
+                    } catch (final IOException ioe) {
+                        logger.warn("Error deleting temp file.", ioe);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * {@link Callable} used to optimize a
+     * {@value IImageOptimizationService#SVG_MIME_TYPE} with svgo. The markup
+     * is rewritten, not the pixels, so no automated visual comparison is done.
+     *
+     * @since 2.0.2
+     */
+    private final class ExecuteSvgOptimization extends AbstractImageOptimization {
+
+        private final File masterFile;
+        private final File workingFile;
+
+        /**
+         * @param masterFile The original SVG
+         * @param workingFile The copy of the file to optimize
+         */
+        public ExecuteSvgOptimization(final File masterFile, final File workingFile) {
+            this.workingFile = workingFile;
+            this.masterFile = masterFile;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public OptimizationResult<C> call() {
+
+            File optimizedFile = null;
+            try {
+                FixedFileUtils.copyFile(masterFile, workingFile);
+
+                optimizedFile = svgoEnginePool.optimize(workingFile, new File(workingFile.getCanonicalPath() + ".min." + SVG_EXTENSION));
+
+                final long masterFileSize = masterFile.length();
+
+                if (optimizedFile.length() < masterFileSize) {
+                    final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, false);
+                    if (finalFile == null) {
+                        return null;
+                    }
+                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, false, false, false);
+                }
+                noSavings = true;
+            } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
+                throw tpbnfe;
+            } catch (final Exception e) {
+                logger.warn(SVG_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
+            } finally {
+                try {
+                    FileUtils.forceDelete(workingFile.getParentFile());
+                } catch (final IOException ioe) {
+                    logger.warn("Error deleting temp file.", ioe);
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class ExecuteGifOptimization extends AbstractImageOptimization {
 
         private final File masterFile;
         private final File workingFile;
@@ -1100,9 +2790,11 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
             this.conversionType = conversionType;
         }
 
-        private boolean isFileTypeConversionEnabled(final File optimizedFile) {
-            if (FileTypeConversion.isEnabled(conversionType) && !ImageUtils.isAminatedGif(optimizedFile)) {
-                if ((conversionType == FileTypeConversion.IE6SAFE) && !ImageUtils.containsAlphaTransparency(optimizedFile)) {
+        private boolean isFileTypeConversionEnabled(final File optimizedFile, final DecodedImageCache decodedImages) {
+            if (FileTypeConversion.isEnabled(conversionType) && !ImageUtils.isAminatedGif(optimizedFile, decodedImages)) {
+                // gifsicle keeps the pixels, so the header of the original
+                // tells if the optimized GIF can be transparent.
+                if ((conversionType == FileTypeConversion.IE6SAFE) && !ImageUtils.containsAlphaTransparency(optimizedFile, descriptor, decodedImages)) {
                     return true;
                 }
                 return (conversionType == FileTypeConversion.ALL);
@@ -1117,6 +2809,9 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
         public OptimizationResult<C> call() {
 
             File optimizedFile = null;
+            // Every check below shares the decoded pixels of the original and
+            // the optimized GIF.
+            final DecodedImageCache decodedImages = new DecodedImageCache();
             try {
                 boolean fileTypeChanged = false;
 
@@ -1126,7 +2821,7 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
 
                 boolean answer;
                 try {
-                    answer = isFileTypeConversionEnabled(optimizedFile);
+                    answer = isFileTypeConversionEnabled(optimizedFile, decodedImages);
                 } catch (final Exception e) {
                     logger.debug("The image must be corrupted. Ignoring the error.", e);
                     answer = false;
@@ -1140,7 +2835,7 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
                     File optimizedFilePng = null;
                     try {
                         //First try optimizing the PNG version of the optimized GIF
-                        ImageIO.write(ImageIO.read(optimizedFile), PNG_EXTENSION, workingFilePng);
+                        ImageIO.write(ImageUtils.read(optimizedFile, decodedImages), PNG_EXTENSION, workingFilePng);
                         optimizedFilePng = new ExecutePngOptimization(workingFilePng, workingFilePng, conversionType).executeOptimization();
                     } catch (final Exception e) {
                         logger.debug("Unable to convert optimized GIF to PNG. Ignoring.", new ImageFileOptimizationException(optimizedFile.getPath(), e));
@@ -1149,7 +2844,8 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
 
                     try {
                         //First try optimizing the PNG version of the optimized GIF
-                        ImageIO.write(ImageIO.read(workingFile), PNG_EXTENSION, workingFilePng2);
+                        // The working file is a copy of the master file.
+                        ImageIO.write(ImageUtils.read(masterFile, decodedImages), PNG_EXTENSION, workingFilePng2);
                         optimizedFilePng = new ExecutePngOptimization(workingFilePng2, workingFilePng2, conversionType).executeOptimization();
                     } catch (final Exception e) {
                         logger.debug("Unable to convert optimized GIF to PNG. Ignoring.", new ImageFileOptimizationException(workingFile.getPath(), e));
@@ -1179,29 +2875,28 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
 
                 final long masterFileSize = masterFile.length();
                 if (optimizedFile.length() < masterFileSize) {
+                    // The validation runs in the background, so a corrupted
+                    // optimized image is dropped here instead.
+                    if (!fileTypeChanged && !ImageUtils.isReadable(optimizedFile, decodedImages)) {
+                        logger.debug("The optimized image {} is corrupted and could not be read.", optimizedFile);
+                        return null;
+                    }
                     final File finalFile = copyFileToMinifiedDirectory(masterFile, optimizedFile, fileTypeChanged);
                     if (finalFile == null) {
                         return null;
                     }
-                    final boolean automatedOptimizationFailed;
-                    try {
-                        automatedOptimizationFailed = fileTypeChanged ? false : !ImageUtils.visuallyCompare(masterFile, optimizedFile);
-                    } catch (final ImageFileOptimizationException ifoe) {
-                        final Throwable cause = ifoe.getCause();
-                        if ((cause instanceof NullPointerException) && "getImageTypes".equals(cause.getStackTrace()[0].getMethodName())) {
-                            logger.debug("The optimized image is corrupted and could not be read.", ifoe);
-                            return null;
-                        }
-                        throw ifoe;
+                    if (fileTypeChanged) {
+                        return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, true, false, false);
                     }
-
-                    return new OptimizationResult<>(finalFile, finalFile.length(), masterFile, masterFileSize, fileTypeChanged, automatedOptimizationFailed, false);
+                    return createVerifiedResult(masterFile, masterFileSize, finalFile);
                 }
+                noSavings = true;
             } catch (final ThirdPartyBinaryNotFoundException tpbnfe) {
                 throw tpbnfe;
             } catch (final Exception e) {
                 logger.warn(GIF_ERROR_MESSAGE, new ImageFileOptimizationException(masterFile.getPath(), e));
             } finally {
+                decodedImages.clear();
                 try {
                     FileUtils.forceDelete(workingFile.getParentFile());
                 } catch (final IOException ioe) {
@@ -1223,10 +2918,12 @@ public class ImageOptimizationService<C> implements IImageOptimizationService<C>
 
     /**
      * Called when the service is being shutdown, so it shuts down the thread
-     * pool.
+     * pool and the svgo engines.
      */
     public void destroy() {
         executorService.shutdown();
+        verificationExecutorService.shutdown();
+        svgoEnginePool.close();
         logger.debug("The executorService is shutdown.");
     }
 }
@@ -0,0 +1,677 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.HashUtils;
+
+/**
+ * <p>Disk backed cache of optimization results. An entry is keyed by the
+ * SHA-256 hash of the original image's content together with the stage that
+ * produced it and the settings of that stage, so a hit can skip every binary
+ * application the stage would have run. Outcomes where the stage could not
+ * make the image smaller are cached as well.</p>
+ * <p>Every entry is a pair of files under a two character fan out directory:
+ * the optimized image, <code>&lt;key&gt;.&lt;extension&gt;</code>, and its
+ * metadata, <code>&lt;key&gt;.properties</code>. Both are written to a temp
+ * file and moved in place, the image first, so an entry only becomes visible
+ * once it is complete and a crash leaves at most an orphaned temp file. When
+ * the cache grows past its maximum size the least recently used entries are
+ * removed.</p>
+ * <p>Many JVMs, on one machine or sharing a mounted directory, can use the same
+ * cache directory at once. Reading is lock free: an entry is complete once its
+ * metadata exists and a missing image is treated as a miss. Computing an entry
+ * is serialized per key, across JVMs, with a {@link FileLock} on one of a fixed
+ * set of lock files, so agents wait for and reuse each other's results instead
+ * of optimizing the same image at the same time. Eviction holds a
+ * {@link FileLock} on a separate lock file and works from the real size of
+ * the directory, since other JVMs add entries too. This class is
+ * threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public class OptimizationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimizationCache.class);
+
+    /**
+     * Changed whenever the layout of the cache or the meaning of an entry
+     * changes, so old entries are no longer matched.
+     * <ul>
+     * <li>2: the verification can still be pending, lossy PNGs are gated by
+     * the worst window and chroma of their SSIM and are no longer verified,
+     * and images whose content does not match their extension are
+     * skipped.</li>
+     * </ul>
+     */
+    static final String CACHE_VERSION = "2";
+
+    private static final String METADATA_EXTENSION = "properties";
+    private static final String TMP_EXTENSION = "tmp";
+
+    private static final String NO_SAVINGS = "noSavings";
+    private static final String EXTENSION = "extension";
+    private static final String FILE_TYPE_CHANGED = "fileTypeChanged";
+    private static final String FAILED_AUTOMATED_TEST = "failedAutomatedTest";
+    private static final String VERIFIED = "verified";
+    private static final String VERIFICATION_PENDING = "verificationPending";
+    private static final String LOSSY_QUALITY = "lossyQuality";
+    private static final String BROWSER_SPECIFIC = "browserSpecific";
+    private static final String PIXEL_DIGEST = "pixelDigest";
+
+    /**
+     * Number of lock files computations are serialized on. Two keys share a
+     * lock file when their first two hex characters are the same.
+     */
+    private static final int NUMBER_OF_KEY_LOCKS = 256;
+
+    private static final String LOCK_DIRECTORY = "locks";
+    private static final String LOCK_EXTENSION = "lock";
+    private static final String EVICTION_LOCK = "eviction";
+
+    /**
+     * Temp files older than this are left over from a crashed JVM and are
+     * removed during eviction.
+     */
+    private static final long STALE_TMP_FILE_AGE_IN_MILLIS = 60L * 60L * 1000L;
+
+    /**
+     * A {@link FileLock} is held by the whole JVM, so a second lock of the
+     * same file from the same JVM fails instead of waiting. Every
+     * {@link OptimizationCache} on the same directory shares these locks so
+     * the threads of one JVM queue up before taking the {@link FileLock}.
+     */
+    private static final ConcurrentMap<File, JvmLocks> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final File lockDirectory;
+    private final long maxSizeInBytes;
+    private final JvmLocks jvmLocks;
+
+    /**
+     * The size of the directory the last time it was measured.
+     */
+    private long measuredSizeInBytes;
+    /**
+     * The bytes this instance added since the directory was last measured.
+     */
+    private long addedSizeInBytes;
+
+    /**
+     * @param directory The directory the cache is stored in. It is created if
+     *                  it does not exist.
+     * @param maxSizeInBytes The maximum number of bytes the cache can use
+     *                       before the least recently used entries are
+     *                       removed.
+     * @throws IOException Thrown if the directory can not be created or read.
+     */
+    public OptimizationCache(final File directory, final long maxSizeInBytes) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("The passed in directory can not be null.");
+        }
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("The maxSizeInBytes needs to be greater than 0.");
+        }
+        Files.createDirectories(directory.toPath());
+        this.directory = directory.getCanonicalFile();
+        lockDirectory = new File(this.directory, LOCK_DIRECTORY);
+        Files.createDirectories(lockDirectory.toPath());
+        this.maxSizeInBytes = maxSizeInBytes;
+        jvmLocks = JVM_LOCKS.computeIfAbsent(this.directory, d -> new JvmLocks());
+        measuredSizeInBytes = calculateSize();
+    }
+
+    /**
+     * @return The directory the cache is stored in.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The maximum number of bytes the cache can use.
+     */
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    /**
+     * Creates the key of the cache entry for the passed in image.
+     *
+     * @param image The original image.
+     * @param configuration Identifies the stage and all of its settings that
+     *                      affect the output.
+     * @return The key.
+     * @throws IOException Thrown if the image can not be read.
+     */
+    String getKey(final File image, final String configuration) throws IOException {
+        return getKeyForHash(HashUtils.sha256Hex(image), configuration);
+    }
+
+    /**
+     * @param contentHash The SHA-256 of the original image's content.
+     * @param configuration Identifies the stage and all of its settings that
+     *                      affect the output.
+     * @return The key.
+     */
+    static String getKeyForHash(final String contentHash, final String configuration) {
+        return HashUtils.sha256Hex(CACHE_VERSION + '\n' + contentHash + '\n' + configuration);
+    }
+
+    /**
+     * Looks up the {@link com.salesforce.perfeng.uiperf.imageoptimization.utils.PixelDigest}
+     * of an original image and marks it as recently used.
+     *
+     * @param contentHash The SHA-256 of the original image's content.
+     * @return The pixel digest or <code>null</code> if it is not cached.
+     */
+    String getPixelDigest(final String contentHash) {
+        final File metadataFile = getFile(getKeyForHash(contentHash, PIXEL_DIGEST), METADATA_EXTENSION);
+        if (!metadataFile.isFile()) {
+            return null;
+        }
+        final Properties metadata = new Properties();
+        try (final InputStream is = Files.newInputStream(metadataFile.toPath())) {
+            metadata.load(is);
+        } catch (final IOException ioe) {
+            logger.debug("Unable to read the cache entry " + metadataFile, ioe);
+            return null;
+        }
+        metadataFile.setLastModified(System.currentTimeMillis());
+        return metadata.getProperty(PIXEL_DIGEST);
+    }
+
+    /**
+     * Stores the {@link com.salesforce.perfeng.uiperf.imageoptimization.utils.PixelDigest}
+     * of an original image, so later runs can verify optimized versions of
+     * it without decoding it again.
+     *
+     * @param contentHash The SHA-256 of the original image's content.
+     * @param pixelDigest The pixel digest of the original image.
+     * @throws IOException Thrown if the entry can not be written.
+     */
+    void putPixelDigest(final String contentHash, final String pixelDigest) throws IOException {
+        final Properties metadata = new Properties();
+        metadata.setProperty(PIXEL_DIGEST, pixelDigest);
+        added(putMetadata(getKeyForHash(contentHash, PIXEL_DIGEST), metadata).length());
+    }
+
+    /**
+     * Looks up an entry and marks it as recently used.
+     *
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @return The entry or <code>null</code> if there is no complete entry for
+     *         the key.
+     */
+    Entry get(final String key) {
+        final File metadataFile = getFile(key, METADATA_EXTENSION);
+        if (!metadataFile.isFile()) {
+            return null;
+        }
+        final Properties metadata = new Properties();
+        try (final InputStream is = Files.newInputStream(metadataFile.toPath())) {
+            metadata.load(is);
+        } catch (final IOException ioe) {
+            logger.debug("Unable to read the cache entry " + metadataFile, ioe);
+            return null;
+        }
+
+        final Entry entry;
+        if (Boolean.parseBoolean(metadata.getProperty(NO_SAVINGS))) {
+            entry = new Entry(null, false, false, false, false, -1, false);
+        } else {
+            final File file = getFile(key, metadata.getProperty(EXTENSION));
+            if (!file.isFile()) {
+                return null;
+            }
+            entry = new Entry(file, Boolean.parseBoolean(metadata.getProperty(FILE_TYPE_CHANGED)), Boolean.parseBoolean(metadata.getProperty(FAILED_AUTOMATED_TEST)), Boolean.parseBoolean(metadata.getProperty(VERIFIED)), Boolean.parseBoolean(metadata.getProperty(VERIFICATION_PENDING)), Integer.parseInt(metadata.getProperty(LOSSY_QUALITY, "-1")), Boolean.parseBoolean(metadata.getProperty(BROWSER_SPECIFIC)));
+        }
+        // The modified time of the metadata is used as the last access time
+        // for the eviction.
+        metadataFile.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Stores an optimized image.
+     *
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @param optimizedFile The optimized image.
+     * @param fileTypeChanged <code>true</code> if the optimized image has a
+     *                        different type than the original.
+     * @param failedAutomatedTest <code>true</code> if the optimized image failed
+     *                            the automated test.
+     * @param verified <code>true</code> if the optimized image was checked to
+     *                 look the same as the original.
+     * @param verificationPending <code>true</code> if the check of the
+     *                            optimized image is still running.
+     *                            {@link #putVerification(String, boolean, boolean)}
+     *                            stores its outcome once it finishes.
+     * @param lossyQuality The quality of the lossy PNG mode that created the
+     *                     optimized image or <code>-1</code>.
+     * @param browserSpecific <code>true</code> if the optimized image is a
+     *                        browser specific format.
+     * @throws IOException Thrown if the entry can not be written.
+     */
+    void put(final String key, final File optimizedFile, final boolean fileTypeChanged, final boolean failedAutomatedTest, final boolean verified, final boolean verificationPending, final int lossyQuality, final boolean browserSpecific) throws IOException {
+        final String extension = FilenameUtils.getExtension(optimizedFile.getName()).toLowerCase();
+        final String previousExtension = getExtension(key);
+        final File file = getFile(key, extension);
+        publish(file, tmp -> Files.copy(optimizedFile.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING));
+
+        final Properties metadata = new Properties();
+        metadata.setProperty(EXTENSION, extension);
+        metadata.setProperty(FILE_TYPE_CHANGED, Boolean.toString(fileTypeChanged));
+        metadata.setProperty(FAILED_AUTOMATED_TEST, Boolean.toString(failedAutomatedTest));
+        metadata.setProperty(VERIFIED, Boolean.toString(verified));
+        metadata.setProperty(VERIFICATION_PENDING, Boolean.toString(verificationPending));
+        metadata.setProperty(LOSSY_QUALITY, Integer.toString(lossyQuality));
+        metadata.setProperty(BROWSER_SPECIFIC, Boolean.toString(browserSpecific));
+        final File metadataFile = putMetadata(key, metadata);
+        if (!extension.equals(previousExtension)) {
+            deletePreviousImage(key, previousExtension);
+        }
+
+        added(file.length() + metadataFile.length());
+    }
+
+    /**
+     * Stores the outcome of the check of an entry that was put while the
+     * check was still running. Nothing is stored if the entry was evicted in
+     * the meantime.
+     *
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @param failedAutomatedTest <code>true</code> if the optimized image failed
+     *                            the automated test.
+     * @param verified <code>true</code> if the optimized image was checked to
+     *                 look the same as the original.
+     * @throws IOException Thrown if the entry can not be written.
+     */
+    void putVerification(final String key, final boolean failedAutomatedTest, final boolean verified) throws IOException {
+        final File metadataFile = getFile(key, METADATA_EXTENSION);
+        final Properties metadata = new Properties();
+        try (final InputStream is = Files.newInputStream(metadataFile.toPath())) {
+            metadata.load(is);
+        } catch (final NoSuchFileException nsfe) {
+            return;
+        }
+        if (Boolean.parseBoolean(metadata.getProperty(NO_SAVINGS))) {
+            return;
+        }
+        metadata.setProperty(FAILED_AUTOMATED_TEST, Boolean.toString(failedAutomatedTest));
+        metadata.setProperty(VERIFIED, Boolean.toString(verified));
+        metadata.remove(VERIFICATION_PENDING);
+        putMetadata(key, metadata);
+    }
+
+    /**
+     * Remembers that the stage could not make the image any smaller.
+     *
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @throws IOException Thrown if the entry can not be written.
+     */
+    void putNoSavings(final String key) throws IOException {
+        final String previousExtension = getExtension(key);
+        final Properties metadata = new Properties();
+        metadata.setProperty(NO_SAVINGS, Boolean.TRUE.toString());
+        added(putMetadata(key, metadata).length());
+        deletePreviousImage(key, previousExtension);
+    }
+
+    /**
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @return The extension of the image the entry currently points to or
+     *         <code>null</code> if there is none.
+     */
+    private String getExtension(final String key) {
+        final Properties metadata = new Properties();
+        try (final InputStream is = Files.newInputStream(getFile(key, METADATA_EXTENSION).toPath())) {
+            metadata.load(is);
+        } catch (final IOException ioe) {
+            return null;
+        }
+        return metadata.getProperty(EXTENSION);
+    }
+
+    /**
+     * Deletes the image an entry pointed to before it was replaced, e.g.
+     * after a stage started to convert to another type. Called after the new
+     * metadata is published, so a reader never finds an entry without its
+     * image.
+     */
+    private void deletePreviousImage(final String key, final String previousExtension) {
+        if ((previousExtension != null) && !METADATA_EXTENSION.equals(previousExtension) && !TMP_EXTENSION.equals(previousExtension)) {
+            delete(getFile(key, previousExtension));
+        }
+    }
+
+    private File putMetadata(final String key, final Properties metadata) throws IOException {
+        final File metadataFile = getFile(key, METADATA_EXTENSION);
+        publish(metadataFile, tmp -> {
+            try (final OutputStream os = Files.newOutputStream(tmp)) {
+                metadata.store(os, null);
+            }
+        });
+        return metadataFile;
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(Path tmp) throws IOException;
+    }
+
+    /**
+     * Writes to a temp file in the same directory and then atomically moves it
+     * to the passed in file.
+     */
+    private static void publish(final File file, final Writer writer) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        final Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), '.' + TMP_EXTENSION);
+        try {
+            writer.write(tmp);
+            try {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private File getFile(final String key, final String extension) {
+        return new File(directory, key.substring(0, 2) + File.separatorChar + key + '.' + extension);
+    }
+
+    /**
+     * Blocks until no other thread or JVM is computing an entry that shares
+     * the lock of the passed in key. The caller should check
+     * {@link #get(String)} again once it holds the lock, since the entry might
+     * have been published while it was waiting.
+     *
+     * @param key The key created by {@link #getKey(File, String)}.
+     * @return The lock, which needs to be closed to release it.
+     * @throws IOException Thrown if the lock file can not be locked.
+     */
+    KeyLock lock(final String key) throws IOException {
+        final int index = Integer.parseInt(key.substring(0, 2), 16) % NUMBER_OF_KEY_LOCKS;
+        final ReentrantLock jvmLock = jvmLocks.keyLocks[index];
+        jvmLock.lock();
+        FileChannel channel = null;
+        try {
+            channel = openLockFile(key.substring(0, 2));
+            return new KeyLock(jvmLock, channel, channel.lock());
+        } catch (final IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    private FileChannel openLockFile(final String name) throws IOException {
+        return FileChannel.open(new File(lockDirectory, name + '.' + LOCK_EXTENSION).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void added(final long bytes) {
+        final boolean evict;
+        synchronized (this) {
+            addedSizeInBytes += bytes;
+            // Other JVMs add entries as well, so measure the directory again
+            // once this instance alone added a tenth of the maximum size.
+            evict = ((measuredSizeInBytes + addedSizeInBytes) > maxSizeInBytes) || (addedSizeInBytes > (maxSizeInBytes / 10));
+        }
+        // The directory is walked without holding the monitor so other puts
+        // are not blocked. When another thread is already evicting, this one
+        // does not wait for it; the next put checks again.
+        if (evict && jvmLocks.evictionLock.tryLock()) {
+            try {
+                measureAndEvict();
+            } catch (final IOException ioe) {
+                logger.warn("Unable to evict entries from the optimization cache.", ioe);
+            } finally {
+                jvmLocks.evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Measures the size of the directory and, when it is above the maximum
+     * size, removes the least recently used entries until the cache is below
+     * 90% of its maximum size, so the next few additions do not trigger
+     * another scan. The caller has to hold the eviction lock of this JVM.
+     * Nothing is done if another JVM is evicting.
+     */
+    private void measureAndEvict() throws IOException {
+        final long addedBeforeMeasuring;
+        synchronized (this) {
+            addedBeforeMeasuring = addedSizeInBytes;
+        }
+        try (final FileChannel channel = openLockFile(EVICTION_LOCK)) {
+            // Closing the channel releases the lock.
+            if (channel.tryLock() == null) {
+                return;
+            }
+            final List<File> metadataFiles = new ArrayList<>();
+            long sizeInBytes = 0;
+            final long staleTime = System.currentTimeMillis() - STALE_TMP_FILE_AGE_IN_MILLIS;
+            try (final Stream<Path> paths = Files.walk(directory.toPath(), 2)) {
+                for (final File file : paths.map(Path::toFile).filter(File::isFile).collect(Collectors.toList())) {
+                    if (lockDirectory.equals(file.getParentFile())) {
+                        continue;
+                    }
+                    final String extension = FilenameUtils.getExtension(file.getName());
+                    if (TMP_EXTENSION.equals(extension) && (file.lastModified() < staleTime)) {
+                        delete(file);
+                        continue;
+                    }
+                    if (METADATA_EXTENSION.equals(extension)) {
+                        metadataFiles.add(file);
+                    }
+                    sizeInBytes += file.length();
+                }
+            }
+
+            if (sizeInBytes > maxSizeInBytes) {
+                metadataFiles.sort(Comparator.comparingLong(File::lastModified));
+                final long target = (maxSizeInBytes / 10) * 9;
+                for (final File metadataFile : metadataFiles) {
+                    if (sizeInBytes <= target) {
+                        break;
+                    }
+                    // Remove the metadata first so a concurrent reader never
+                    // finds an entry without its image.
+                    final String key = FilenameUtils.getBaseName(metadataFile.getName());
+                    final File[] files = metadataFile.getParentFile().listFiles((dir, name) -> name.startsWith(key + '.') && !name.endsWith('.' + TMP_EXTENSION) && !name.equals(metadataFile.getName()));
+                    sizeInBytes -= delete(metadataFile);
+                    if (files != null) {
+                        for (final File file : files) {
+                            sizeInBytes -= delete(file);
+                        }
+                    }
+                }
+                logger.debug("Evicted entries from the optimization cache. It is now {} bytes.", Long.valueOf(sizeInBytes));
+            }
+
+            synchronized (this) {
+                measuredSizeInBytes = sizeInBytes;
+                // What was added during the walk might not have been counted.
+                addedSizeInBytes -= addedBeforeMeasuring;
+            }
+        }
+    }
+
+    private static long delete(final File file) {
+        final long length = file.length();
+        return file.delete() ? length : 0;
+    }
+
+    private long calculateSize() throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory.toPath(), 2)) {
+            return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+        }
+    }
+
+    /**
+     * The locks shared by every {@link OptimizationCache} on the same
+     * directory in this JVM.
+     */
+    private static final class JvmLocks {
+        final ReentrantLock evictionLock = new ReentrantLock();
+        final ReentrantLock[] keyLocks = new ReentrantLock[NUMBER_OF_KEY_LOCKS];
+
+        JvmLocks() {
+            for (int i = 0; i < keyLocks.length; i++) {
+                keyLocks[i] = new ReentrantLock();
+            }
+        }
+    }
+
+    /**
+     * Held while an entry is computed. Closing it releases the lock.
+     */
+    static final class KeyLock implements Closeable {
+
+        private final ReentrantLock jvmLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        KeyLock(final ReentrantLock jvmLock, final FileChannel channel, final FileLock fileLock) {
+            this.jvmLock = jvmLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                fileLock.release();
+                channel.close();
+            } finally {
+                jvmLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A complete cache entry.
+     */
+    static final class Entry {
+
+        private final File file;
+        private final boolean fileTypeChanged;
+        private final boolean failedAutomatedTest;
+        private final boolean verified;
+        private final boolean verificationPending;
+        private final int lossyQuality;
+        private final boolean browserSpecific;
+
+        Entry(final File file, final boolean fileTypeChanged, final boolean failedAutomatedTest, final boolean verified, final boolean verificationPending, final int lossyQuality, final boolean browserSpecific) {
+            this.file = file;
+            this.fileTypeChanged = fileTypeChanged;
+            this.failedAutomatedTest = failedAutomatedTest;
+            this.verified = verified;
+            this.verificationPending = verificationPending;
+            this.lossyQuality = lossyQuality;
+            this.browserSpecific = browserSpecific;
+        }
+
+        /**
+         * @return <code>true</code> if the stage could not make the image any
+         *         smaller.
+         */
+        boolean isNoSavings() {
+            return file == null;
+        }
+
+        /**
+         * @return The cached optimized image or <code>null</code> if
+         *         {@link #isNoSavings()}.
+         */
+        File getFile() {
+            return file;
+        }
+
+        boolean isFileTypeChanged() {
+            return fileTypeChanged;
+        }
+
+        boolean isFailedAutomatedTest() {
+            return failedAutomatedTest;
+        }
+
+        boolean isVerified() {
+            return verified;
+        }
+
+        /**
+         * @return <code>true</code> if the check of the optimized image had not
+         *         finished when the entry was read. The JVM that put the entry
+         *         might have stopped before it could finish, so the reader
+         *         needs to check the image itself.
+         */
+        boolean isVerificationPending() {
+            return verificationPending;
+        }
+
+        int getLossyQuality() {
+            return lossyQuality;
+        }
+
+        boolean isBrowserSpecific() {
+            return browserSpecific;
+        }
+    }
+}
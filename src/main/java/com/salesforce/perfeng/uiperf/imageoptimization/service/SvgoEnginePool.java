@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
+
+/**
+ * <p>Pool of warm node processes running the svgo optimizer that is bundled in
+ * the <code>org.webjars:svgo</code> webjar. Starting node and loading svgo
+ * takes far longer than optimizing a typical icon, so each process stays alive
+ * and optimizes one file at a time for as long as the pool is open.</p>
+ * <p>The webjar is extracted into the working directory the first time an
+ * engine is started. The webjar only contains svgo itself, its node
+ * dependencies are resolved from the <code>node_modules</code> directory
+ * passed in, which <code>script/install.sh</code> fills with npm, and then
+ * from <code>NODE_PATH</code>. The protocol between the pool and an engine is line
+ * based: the pool writes "<i>id</i>\t<i>input path</i>\t<i>output path</i>"
+ * and the engine answers with "<i>id</i> OK" or "<i>id</i> ERROR
+ * <i>message</i>". Any other output is logged and skipped, so a stray line
+ * can never be taken for the answer of a later request. An engine that does
+ * not answer in time, or fails, is stopped instead of being reused. This class
+ * is threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+final class SvgoEnginePool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SvgoEnginePool.class);
+
+    private static final String WEBJAR_POM_PROPERTIES = "META-INF/maven/org.webjars/svgo/pom.properties";
+    private static final String WEBJAR_ROOT = "META-INF/resources/webjars/svgo/";
+
+    /**
+     * The script run by each node process. It loads svgo once and then
+     * optimizes every file it is asked to.
+     */
+    private static final String ENGINE_SCRIPT = String.join("\n",
+            "var fs = require('fs');",
+            "var SVGO = require(process.argv[2]);",
+            "var svgo = new SVGO();",
+            "var rl = require('readline').createInterface({input: process.stdin, terminal: false});",
+            "function reply(message) { process.stdout.write(message.replace(/[\\r\\n]+/g, ' ') + '\\n'); }",
+            "rl.on('line', function (line) {",
+            "  var fields = line.split('\\t');",
+            "  var id = fields[0] + ' ';",
+            "  try {",
+            "    svgo.optimize(fs.readFileSync(fields[1], 'utf8'), function (result) {",
+            "      if (result.error) { reply(id + 'ERROR ' + result.error); return; }",
+            "      fs.writeFileSync(fields[2], result.data, 'utf8');",
+            "      reply(id + 'OK');",
+            "    });",
+            "  } catch (e) {",
+            "    reply(id + 'ERROR ' + (e && e.stack ? e.stack : e));",
+            "  }",
+            "});",
+            "reply('READY');",
+            "");
+
+    /**
+     * How long an engine gets to answer when the service has no timeout.
+     */
+    static final int DEFAULT_TIMEOUT_IN_SECONDS = 60;
+
+    private final String nodeBinaryPath;
+    private final File nodeModulesDirectory;
+    private final File workingDirectory;
+    private final int maxNumberOfEngines;
+    private final long timeoutInMillis;
+    private final BlockingQueue<Engine> idleEngines = new LinkedBlockingQueue<>();
+
+    private int numberOfEngines;
+    private File svgoModule;
+    private File engineScript;
+    private boolean closed;
+
+    /**
+     * @param nodeBinaryPath The path to the node binary.
+     * @param nodeModulesDirectory The <code>node_modules</code> directory
+     *                             svgo's dependencies are installed in.
+     * @param workingDirectory Where the webjar and the engine script are
+     *                         extracted to.
+     * @param maxNumberOfEngines The maximum number of node processes to keep
+     *                           running.
+     * @param timeoutInSeconds How long an engine gets to start or to answer
+     *                         a request before it is stopped. If
+     *                         <code>0</code> or less then
+     *                         {@value #DEFAULT_TIMEOUT_IN_SECONDS} is used.
+     */
+    SvgoEnginePool(final String nodeBinaryPath, final File nodeModulesDirectory, final File workingDirectory, final int maxNumberOfEngines, final int timeoutInSeconds) {
+        this(nodeBinaryPath, nodeModulesDirectory, workingDirectory, maxNumberOfEngines, timeoutInSeconds, null);
+    }
+
+    /**
+     * @param nodeBinaryPath The path to the node binary.
+     * @param nodeModulesDirectory The <code>node_modules</code> directory
+     *                             svgo's dependencies are installed in.
+     * @param workingDirectory Where the webjar and the engine script are
+     *                         extracted to.
+     * @param maxNumberOfEngines The maximum number of node processes to keep
+     *                           running.
+     * @param timeoutInSeconds How long an engine gets to start or to answer
+     *                         a request before it is stopped. If
+     *                         <code>0</code> or less then
+     *                         {@value #DEFAULT_TIMEOUT_IN_SECONDS} is used.
+     * @param svgoModule The svgo module to run instead of the one in the
+     *                   webjar or <code>null</code> to use the webjar.
+     */
+    SvgoEnginePool(final String nodeBinaryPath, final File nodeModulesDirectory, final File workingDirectory, final int maxNumberOfEngines, final int timeoutInSeconds, final File svgoModule) {
+        this.nodeBinaryPath = nodeBinaryPath;
+        this.nodeModulesDirectory = nodeModulesDirectory;
+        this.workingDirectory = workingDirectory;
+        this.maxNumberOfEngines = maxNumberOfEngines;
+        timeoutInMillis = TimeUnit.SECONDS.toMillis((timeoutInSeconds > 0) ? timeoutInSeconds : DEFAULT_TIMEOUT_IN_SECONDS);
+        this.svgoModule = svgoModule;
+    }
+
+    /**
+     * Optimizes the passed in SVG using one of the warm engines.
+     *
+     * @param inputFile The SVG to optimize.
+     * @param outputFile Where the optimized SVG is written.
+     * @return The outputFile.
+     * @throws InterruptedException If the optimization was interrupted.
+     * @throws IOException If there is a problem communicating with the engine.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if node can not be
+     *                                           started.
+     */
+    File optimize(final File inputFile, final File outputFile) throws InterruptedException, IOException, ThirdPartyBinaryNotFoundException {
+        final String inputPath = inputFile.getCanonicalPath();
+        final String outputPath = outputFile.getCanonicalPath();
+        if ((inputPath + outputPath).matches(".*[\\t\\r\\n].*")) {
+            throw ImageFileOptimizationException.getInstance(inputFile, "SVG paths can not contain tabs or line breaks.");
+        }
+
+        final Engine engine = borrow();
+        boolean healthy = false;
+        try {
+            final String answer = engine.send(inputPath, outputPath, timeoutInMillis);
+            if (!"OK".equals(answer)) {
+                throw ImageFileOptimizationException.getInstance(inputFile, "svgo failed: " + answer);
+            }
+            healthy = true;
+            return outputFile;
+        } finally {
+            giveBack(engine, healthy);
+        }
+    }
+
+    private Engine borrow() throws InterruptedException, IOException {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("The svgo engine pool is closed.");
+                }
+                final Engine idle = idleEngines.poll();
+                if (idle != null) {
+                    return idle;
+                }
+                if (numberOfEngines < maxNumberOfEngines) {
+                    numberOfEngines++;
+                    break;
+                }
+            }
+            // Every engine is busy, so wait for one to be given back.
+            final Engine idle = idleEngines.poll(100, TimeUnit.MILLISECONDS);
+            if (idle != null) {
+                return idle;
+            }
+        }
+        return startEngine();
+    }
+
+    private void giveBack(final Engine engine, final boolean healthy) {
+        synchronized (this) {
+            if (healthy && !closed) {
+                idleEngines.add(engine);
+                return;
+            }
+            numberOfEngines--;
+        }
+        engine.destroy();
+    }
+
+    private Engine startEngine() throws IOException, InterruptedException {
+        try {
+            prepare();
+            final ProcessBuilder processBuilder = new ProcessBuilder(List.of(nodeBinaryPath, engineScript.getCanonicalPath(), svgoModule.getCanonicalPath()));
+            final String nodePath = processBuilder.environment().get("NODE_PATH");
+            processBuilder.environment().put("NODE_PATH", nodeModulesDirectory.getCanonicalPath() + (((nodePath == null) || nodePath.isEmpty()) ? "" : File.pathSeparator + nodePath));
+            final Process process;
+            try {
+                process = processBuilder.start();
+            } catch (final IOException ioe) {
+                throw new ThirdPartyBinaryNotFoundException(ImageOptimizationService.NODE_BINARY, "node is needed to run svgo.", ioe);
+            }
+            final Engine engine = new Engine(process);
+            try {
+                engine.awaitReady(timeoutInMillis);
+            } catch (final IOException | InterruptedException | RuntimeException e) {
+                engine.destroy();
+                throw e;
+            }
+            return engine;
+        } catch (final IOException | InterruptedException | RuntimeException e) {
+            synchronized (this) {
+                numberOfEngines--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Extracts the svgo webjar and writes the engine script the first time it
+     * is needed.
+     *
+     * @throws IOException Thrown if the webjar can not be found or extracted.
+     */
+    private synchronized void prepare() throws IOException {
+        if (engineScript != null) {
+            return;
+        }
+        final File script = new File(workingDirectory, "svgo-engine.js");
+        Files.createDirectories(workingDirectory.toPath());
+        Files.write(script.toPath(), ENGINE_SCRIPT.getBytes(StandardCharsets.UTF_8));
+        if (svgoModule == null) {
+            svgoModule = extractWebjar();
+        }
+        engineScript = script;
+    }
+
+    /**
+     * Extracts the svgo webjar into the working directory.
+     *
+     * @return The svgo module.
+     * @throws IOException Thrown if the webjar can not be found or extracted.
+     */
+    private File extractWebjar() throws IOException {
+        final ClassLoader classLoader = SvgoEnginePool.class.getClassLoader();
+        final Properties pom = new Properties();
+        try (final InputStream is = classLoader.getResourceAsStream(WEBJAR_POM_PROPERTIES)) {
+            if (is == null) {
+                throw new IOException("The org.webjars:svgo webjar is not on the classpath.");
+            }
+            pom.load(is);
+        }
+        final String version = pom.getProperty("version", "");
+        // The webjar version can have a "-N" packaging suffix that is not part
+        // of the svgo version.
+        final String prefix = WEBJAR_ROOT + version.replaceFirst("-\\d+$", "") + '/';
+
+        final URL url = classLoader.getResource(prefix + "package.json");
+        if (url == null) {
+            throw new IOException("Unable to find svgo in the webjar at " + prefix);
+        }
+
+        final File moduleDirectory = new File(workingDirectory, "svgo");
+        final URLConnection connection = url.openConnection();
+        if (connection instanceof JarURLConnection) {
+            final JarFile jarFile = ((JarURLConnection) connection).getJarFile();
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().startsWith(prefix)) {
+                    continue;
+                }
+                final File target = new File(moduleDirectory, entry.getName().substring(prefix.length()));
+                if (!target.getCanonicalPath().startsWith(moduleDirectory.getCanonicalPath() + File.separator)) {
+                    throw new IOException("Invalid webjar entry " + entry.getName());
+                }
+                try (final InputStream is = jarFile.getInputStream(entry)) {
+                    FileUtils.copyInputStreamToFile(is, target);
+                }
+            }
+        } else {
+            try {
+                FileUtils.copyDirectory(new File(url.toURI()).getParentFile(), moduleDirectory);
+            } catch (final URISyntaxException use) {
+                throw new IOException(use);
+            }
+        }
+
+        return new File(moduleDirectory, "lib" + File.separator + "svgo.js");
+    }
+
+    /**
+     * Stops all of the node processes. Engines that are busy are stopped as
+     * soon as they are given back.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        Engine engine;
+        while ((engine = idleEngines.poll()) != null) {
+            synchronized (this) {
+                numberOfEngines--;
+            }
+            engine.destroy();
+        }
+        logger.debug("The svgo engine pool is closed.");
+    }
+
+    /**
+     * One node process running svgo. Its output is read by a daemon thread so
+     * waiting for an answer blocks, can time out and can be interrupted. Its
+     * error output is logged.
+     */
+    private static final class Engine {
+
+        /**
+         * Queued when the engine closed its output.
+         */
+        private static final String END_OF_OUTPUT = new String("END_OF_OUTPUT");
+
+        private final Process process;
+        private final Writer writer;
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        private long nextRequestId;
+
+        Engine(final Process process) {
+            this.process = process;
+            writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            startDaemon("svgo-engine-out", () -> {
+                try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (final IOException ioe) {
+                    logger.debug("Unable to read the output of the svgo engine.", ioe);
+                } finally {
+                    lines.add(END_OF_OUTPUT);
+                }
+            });
+            startDaemon("svgo-engine-err", () -> {
+                try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        logger.warn("svgo engine: {}", line);
+                    }
+                } catch (final IOException ioe) {
+                    logger.debug("Unable to read the error output of the svgo engine.", ioe);
+                }
+            });
+        }
+
+        private static void startDaemon(final String name, final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void awaitReady(final long timeoutInMillis) throws IOException, InterruptedException {
+            readAnswer("READY", System.currentTimeMillis() + timeoutInMillis);
+        }
+
+        /**
+         * Sends one request and waits for its answer.
+         *
+         * @return "OK" or "ERROR <i>message</i>".
+         */
+        String send(final String inputPath, final String outputPath, final long timeoutInMillis) throws IOException, InterruptedException {
+            final String id = Long.toString(nextRequestId++);
+            writer.write(id + '\t' + inputPath + '\t' + outputPath + '\n');
+            writer.flush();
+            return readAnswer(id + ' ', System.currentTimeMillis() + timeoutInMillis);
+        }
+
+        /**
+         * Waits for the line starting with the passed in prefix, skipping any
+         * other output.
+         *
+         * @return The rest of the line after the prefix.
+         */
+        private String readAnswer(final String prefix, final long deadline) throws IOException, InterruptedException {
+            while (true) {
+                final String line = lines.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    throw new IOException("The svgo engine did not answer in time.");
+                }
+                if (line == END_OF_OUTPUT) {
+                    // Any later read has to fail as well.
+                    lines.add(END_OF_OUTPUT);
+                    throw new IOException("The svgo engine stopped" + (process.isAlive() ? "." : " with exit code " + process.waitFor() + '.'));
+                }
+                if (line.startsWith(prefix)) {
+                    return line.substring(prefix.length());
+                }
+                logger.debug("Skipping unexpected output of the svgo engine: {}", line);
+            }
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageVariants;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.OptimizationResult;
+
+/**
+ * <p>Writes the machine readable (JSON) manifest listing every optimized
+ * version of each image. The variants of an image are listed from the smallest
+ * to the largest so the consumer, like a CDN edge, can pick the first format
+ * the client supports.</p>
+ * <p>Example:</p>
+ * <pre>
+ * {"images":[
+ *   {"original":{"path":"/a/b.png","size":100,"mimeType":"image/png"},
+ *    "best":{"path":"/tmp/final/a/b.webp","size":60,"mimeType":"image/webp",...},
+ *    "variants":[{"path":"/tmp/final/a/b.webp","size":60,"mimeType":"image/webp","browserSpecific":true,"failedAutomatedTest":false},
+ *                {"path":"/tmp/final/a/b.png","size":80,"mimeType":"image/png","browserSpecific":false,"failedAutomatedTest":false}]}
+ * ]}
+ * </pre>
+ *
+ * @since 2.0.2
+ */
+final class VariantManifestWriter {
+
+    private VariantManifestWriter() {
+        // Private to prevent developers from unnecessarily instantiating this
+        // class.
+    }
+
+    /**
+     * Writes the manifest. The file is first written to a temp file next to
+     * the manifest and then moved in place so a reader never sees a partially
+     * written manifest.
+     *
+     * @param imageVariants The grouped variants to write.
+     * @param manifestFile Where to write the manifest.
+     * @throws IOException Thrown if the manifest can not be written.
+     */
+    static void write(final List<? extends ImageVariants<?>> imageVariants, final File manifestFile) throws IOException {
+        final StringBuilder sb = new StringBuilder("{\"images\":[");
+        boolean first = true;
+        for (final ImageVariants<?> variants : imageVariants) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("\n{\"original\":");
+            appendFile(sb, variants.getOriginalFile(), variants.getOriginalFileSize());
+            sb.append(",\"best\":");
+            final OptimizationResult<?> best = variants.getSmallestVariant(true);
+            if (best == null) {
+                sb.append("null");
+            } else {
+                appendVariant(sb, best);
+            }
+            sb.append(",\"variants\":[");
+            boolean firstVariant = true;
+            for (final OptimizationResult<?> variant : variants.getVariants()) {
+                if (!firstVariant) {
+                    sb.append(',');
+                }
+                firstVariant = false;
+                appendVariant(sb, variant);
+            }
+            sb.append("]}");
+        }
+        sb.append("\n]}\n");
+
+        final Path manifestPath = manifestFile.toPath();
+        final Path parent = manifestPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmpPath = Files.createTempFile(parent, manifestFile.getName(), ".tmp");
+        try {
+            try (final Writer writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+                writer.write(sb.toString());
+            }
+            Files.move(tmpPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private static void appendFile(final StringBuilder sb, final File file, final long size) {
+        sb.append('{');
+        appendFileFields(sb, file, size);
+        sb.append('}');
+    }
+
+    private static void appendVariant(final StringBuilder sb, final OptimizationResult<?> variant) {
+        sb.append('{');
+        appendFileFields(sb, variant.getOptimizedFile(), variant.getOptimizedFileSize());
+        sb.append(",\"browserSpecific\":").append(variant.isBrowserSpecific())
+          .append(",\"failedAutomatedTest\":").append(variant.isFailedAutomatedTest())
+          .append('}');
+    }
+
+    /**
+     * Appends the fields describing a file, without the braces of the object.
+     */
+    private static void appendFileFields(final StringBuilder sb, final File file, final long size) {
+        sb.append("\"path\":");
+        appendString(sb, file.getPath());
+        sb.append(",\"size\":").append(size).append(",\"mimeType\":");
+        appendString(sb, IImageOptimizationService.getMimeType(FilenameUtils.getExtension(file.getName())));
+    }
+
+    private static void appendString(final StringBuilder sb, final String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Compares two large images band by band, so neither image is ever fully
+ * decoded into memory. Each band is read from both images with a source
+ * region, using {@link ImageReader#readRaster(int, ImageReadParam)} when both
+ * readers support it, and the comparison stops at the first band that
+ * contains a different pixel.</p>
+ * <p>Two 100% transparent pixels are equal no matter what their color is, the
+ * same as {@link ImageUtils#visuallyCompare(File, File)}. This class is
+ * threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+final class BandedImageComparator {
+
+    private final static Logger logger = LoggerFactory.getLogger(BandedImageComparator.class);
+
+    /**
+     * Images with more pixels than this, 16 megapixels, are compared band by
+     * band.
+     */
+    static final long DEFAULT_THRESHOLD_IN_PIXELS = 4096L * 4096L;
+
+    /**
+     * The default number of bytes both bands may use together, 64 MB.
+     */
+    static final long DEFAULT_MAX_BAND_SIZE_IN_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * The worst case number of bytes a decoded pixel uses.
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final long thresholdInPixels;
+    private final long maxBandSizeInBytes;
+
+    /**
+     * Creates a comparator using {@value #DEFAULT_THRESHOLD_IN_PIXELS} pixels
+     * and {@value #DEFAULT_MAX_BAND_SIZE_IN_BYTES} bytes.
+     */
+    BandedImageComparator() {
+        this(DEFAULT_THRESHOLD_IN_PIXELS, DEFAULT_MAX_BAND_SIZE_IN_BYTES);
+    }
+
+    /**
+     * @param thresholdInPixels Images with more pixels than this are compared
+     *                          band by band.
+     * @param maxBandSizeInBytes The number of bytes both bands may use
+     *                           together.
+     */
+    BandedImageComparator(final long thresholdInPixels, final long maxBandSizeInBytes) {
+        this.thresholdInPixels = thresholdInPixels;
+        this.maxBandSizeInBytes = maxBandSizeInBytes;
+    }
+
+    /**
+     * Compares both images band by band if they are larger than the
+     * threshold.
+     *
+     * @param file1 Image 1 to compare
+     * @param file2 Image 2 to compare
+     * @return {@link Boolean#TRUE} if both images are visually the same,
+     *         {@link Boolean#FALSE} if they are not, or <code>null</code> if
+     *         the images are too small or can not be read band by band, in
+     *         which case they have to be compared fully decoded.
+     */
+    Boolean compare(final File file1, final File file2) {
+        ImageReader reader1 = null;
+        ImageReader reader2 = null;
+        try {
+            reader1 = open(file1);
+            if (reader1 == null) {
+                return null;
+            }
+            final int width = reader1.getWidth(0);
+            final int height = reader1.getHeight(0);
+            if (((long) width * height) <= thresholdInPixels) {
+                return null;
+            }
+            reader2 = open(file2);
+            if (reader2 == null) {
+                return null;
+            }
+            if ((width != reader2.getWidth(0)) || (height != reader2.getHeight(0))) {
+                logger.debug("The image dimensions are different.");
+                return Boolean.FALSE;
+            }
+            return Boolean.valueOf(compare(reader1, reader2, width, height));
+        } catch (final IOException | RuntimeException e) {
+            logger.debug("Unable to compare \"{}\" and \"{}\" band by band.", file1.getPath(), file2.getPath(), e);
+            return null;
+        } finally {
+            close(reader1);
+            close(reader2);
+        }
+    }
+
+    private boolean compare(final ImageReader reader1, final ImageReader reader2, final int width, final int height) throws IOException {
+        final int bandHeight = (int) Math.max(1, Math.min(height, maxBandSizeInBytes / (2L * BYTES_PER_PIXEL * width)));
+        final boolean raster = reader1.canReadRaster() && reader2.canReadRaster()
+                && reader1.getFormatName().equalsIgnoreCase(reader2.getFormatName());
+        logger.debug("Comparing {}x{} images in bands of {} rows.", Integer.valueOf(width), Integer.valueOf(height), Integer.valueOf(bandHeight));
+
+        for (int y = 0; y < height; y += bandHeight) {
+            final ImageReadParam param1 = reader1.getDefaultReadParam();
+            final ImageReadParam param2 = reader2.getDefaultReadParam();
+            final Rectangle region = new Rectangle(0, y, width, Math.min(bandHeight, height - y));
+            param1.setSourceRegion(region);
+            param2.setSourceRegion(region);
+
+            if (raster && equals(reader1.readRaster(0, param1), reader2.readRaster(0, param2))) {
+                continue;
+            }
+            //Different samples can still be the same pixels, e.g. a different
+            //color for a 100% transparent pixel, so compare the colors.
+            final BufferedImage band1 = reader1.read(0, param1);
+            final BufferedImage band2 = reader2.read(0, param2);
+            if (!PixelComparator.equals(band1, band2)) {
+                logger.debug("The band starting at row {} is different.", Integer.valueOf(y));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(final Raster raster1, final Raster raster2) {
+        return (raster1.getWidth() == raster2.getWidth()) && (raster1.getHeight() == raster2.getHeight())
+                && raster1.getSampleModel().equals(raster2.getSampleModel())
+                && PixelComparator.equals(raster1.getDataBuffer(), raster2.getDataBuffer());
+    }
+
+    /**
+     * @return A reader positioned on the passed in file, or <code>null</code>
+     *         if the file should not be read band by band.
+     */
+    private static ImageReader open(final File file) throws IOException {
+        final ImageInputStream stream = ImageIO.createImageInputStream(file);
+        if (stream == null) {
+            return null;
+        }
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            return null;
+        }
+        final ImageReader reader = readers.next();
+        //ImageIO decodes some GIFs differently than browsers do, so they are
+        //left to the fully decoded comparison.
+        if ("gif".equalsIgnoreCase(reader.getFormatName())) {
+            reader.dispose();
+            stream.close();
+            return null;
+        }
+        reader.setInput(stream, true, true);
+        return reader;
+    }
+
+    private static void close(final ImageReader reader) {
+        if (reader == null) {
+            return;
+        }
+        final Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            try {
+                ((ImageInputStream) input).close();
+            } catch (final IOException ioe) {
+                logger.debug("Unable to close the image stream.", ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Memory bounded cache of decoded pixel data and header information used
+ * while a single image is optimized, so each file is decoded at most once by
+ * the checks in {@link ImageUtils}. Create one per task and call
+ * {@link #clear()} when the task is done.</p>
+ * <p>Entries are keyed by the file's path, size and last modified time, so a
+ * file that is rewritten is decoded again. When the cache is full the least
+ * recently used entries are dropped. Values must not be modified by the
+ * caller. This class is not threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public final class DecodedImageCache {
+
+    /**
+     * The default maximum number of bytes of decoded data kept, 32 MB.
+     */
+    public static final long DEFAULT_MAX_SIZE_IN_BYTES = 32L * 1024L * 1024L;
+
+    /**
+     * Fixed cost charged for every entry, so small values like header
+     * information are bounded as well.
+     */
+    private static final long ENTRY_OVERHEAD_IN_BYTES = 128;
+
+    private final long maxSizeInBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeInBytes;
+
+    /**
+     * Creates a cache that keeps up to {@value #DEFAULT_MAX_SIZE_IN_BYTES}
+     * bytes.
+     */
+    public DecodedImageCache() {
+        this(DEFAULT_MAX_SIZE_IN_BYTES);
+    }
+
+    /**
+     * @param maxSizeInBytes The maximum number of bytes of decoded data kept.
+     */
+    public DecodedImageCache(final long maxSizeInBytes) {
+        if (maxSizeInBytes < 0) {
+            throw new IllegalArgumentException("The maxSizeInBytes can not be negative.");
+        }
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Returns the cached value or decodes and caches it.
+     *
+     * @param <T> The type of the decoded value.
+     * @param file The image.
+     * @param kind What is decoded, for example "pixels". Each kind of value
+     *             of a file is cached separately.
+     * @param decoder Decodes the value on a miss.
+     * @param sizer Estimates the number of bytes used by the value.
+     * @return The decoded value.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(final File file, final String kind, final Function<File, T> decoder, final ToLongFunction<T> sizer) {
+        final String key = getKey(file, kind);
+        final Entry cached = entries.get(key);
+        if (cached != null) {
+            return (T)cached.value;
+        }
+
+        final T value = decoder.apply(file);
+        final long size = sizer.applyAsLong(value) + ENTRY_OVERHEAD_IN_BYTES;
+        if (size <= maxSizeInBytes) {
+            entries.put(key, new Entry(value, size));
+            sizeInBytes += size;
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while ((sizeInBytes > maxSizeInBytes) && iterator.hasNext()) {
+                sizeInBytes -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return The number of bytes of decoded data currently kept.
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Releases all of the decoded data.
+     */
+    public void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    private static String getKey(final File file, final String kind) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (final IOException ioe) {
+            path = file.getAbsolutePath();
+        }
+        return kind + '|' + file.length() + '|' + file.lastModified() + '|' + path;
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long size;
+
+        Entry(final Object value, final long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Streaming parser of the blocks of a GIF file. It only reads the bytes of
+ * the header, the Logical Screen Descriptor and the block headers, and skips
+ * over color tables and image data, so no frame is ever decoded and no frame
+ * buffer is ever allocated.</p>
+ * <p>The caller decides how far to read by calling {@link #next()} until it
+ * has the answer it needs. This class is not threadsafe and does not close
+ * the stream.</p>
+ *
+ * @since 2.0.2
+ */
+final class GifBlockParser {
+
+    /**
+     * The blocks of a GIF file returned by {@link GifBlockParser#next()}.
+     */
+    enum Block {
+        /** A Graphic Control Extension, which applies to the next frame. */
+        GRAPHIC_CONTROL_EXTENSION,
+        /** Any other extension, e.g. a comment or the NETSCAPE2.0 loop. */
+        EXTENSION,
+        /** An Image Descriptor and its image data, i.e. a frame. */
+        IMAGE,
+        /** The end of the file. */
+        TRAILER
+    }
+
+    private static final int EXTENSION_INTRODUCER = 0x21;
+    private static final int GRAPHIC_CONTROL_LABEL = 0xf9;
+    private static final int APPLICATION_LABEL = 0xff;
+    private static final int IMAGE_SEPARATOR = 0x2c;
+    private static final int TRAILER = 0x3b;
+
+    private final DataInputStream in;
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private boolean transparent;
+    private int extensionLabel = -1;
+    private String applicationIdentifier;
+    private int frameCount;
+
+    /**
+     * Reads the header and the Logical Screen Descriptor.
+     *
+     * @param inputStream The GIF to parse, which should be buffered.
+     * @throws IOException Thrown if the stream is not a GIF or can not be
+     *                     read.
+     */
+    GifBlockParser(final InputStream inputStream) throws IOException {
+        this.in = new DataInputStream(inputStream);
+        final byte[] signature = new byte[6];
+        in.readFully(signature);
+        if ((signature[0] != 'G') || (signature[1] != 'I') || (signature[2] != 'F')) {
+            throw new IOException("Not a GIF file.");
+        }
+        width = readUnsignedShort();
+        height = readUnsignedShort();
+        final int flags = in.readUnsignedByte();
+        bitDepth = ((flags >> 4) & 0x07) + 1;
+        skipFully(2);
+        skipColorTable(flags);
+    }
+
+    /**
+     * Reads the next block, skipping all of its data.
+     *
+     * @return The type of the block read.
+     * @throws IOException Thrown if the file is truncated, contains an unknown
+     *                     block or can not be read.
+     */
+    Block next() throws IOException {
+        final int block = in.readUnsignedByte();
+        if (block == EXTENSION_INTRODUCER) {
+            final int label = in.readUnsignedByte();
+            extensionLabel = label;
+            if (label == GRAPHIC_CONTROL_LABEL) {
+                final int size = in.readUnsignedByte();
+                final int packed = in.readUnsignedByte();
+                transparent = (packed & 0x01) != 0;
+                skipFully(size - 1L);
+                skipSubBlocks();
+                return Block.GRAPHIC_CONTROL_EXTENSION;
+            }
+            if (label == APPLICATION_LABEL) {
+                final byte[] identifier = new byte[in.readUnsignedByte()];
+                in.readFully(identifier);
+                applicationIdentifier = new String(identifier, StandardCharsets.US_ASCII);
+                if (identifier.length == 0) {
+                    return Block.EXTENSION;
+                }
+            }
+            skipSubBlocks();
+            return Block.EXTENSION;
+        }
+        if (block == IMAGE_SEPARATOR) {
+            skipFully(8);
+            skipColorTable(in.readUnsignedByte());
+            //LZW minimum code size
+            skipFully(1);
+            skipSubBlocks();
+            frameCount++;
+            return Block.IMAGE;
+        }
+        if (block == TRAILER) {
+            return Block.TRAILER;
+        }
+        throw new IOException("Unknown GIF block 0x" + Integer.toHexString(block) + '.');
+    }
+
+    /**
+     * @return The width of the Logical Screen.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the Logical Screen.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of bits per primary color of the original image, as
+     *         declared by the Logical Screen Descriptor.
+     */
+    int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * @return The label of the last extension read, e.g. <code>0xfe</code>
+     *         for a comment, or <code>-1</code> if none was read yet.
+     */
+    int getExtensionLabel() {
+        return extensionLabel;
+    }
+
+    /**
+     * @return The identifier and authentication code of the last Application
+     *         Extension read, e.g. <code>NETSCAPE2.0</code>, or
+     *         <code>null</code> if none was read yet.
+     */
+    String getApplicationIdentifier() {
+        return applicationIdentifier;
+    }
+
+    /**
+     * @return <code>true</code> if the last Graphic Control Extension read
+     *         sets the transparency flag.
+     */
+    boolean isTransparent() {
+        return transparent;
+    }
+
+    /**
+     * @return The number of frames read so far.
+     */
+    int getFrameCount() {
+        return frameCount;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+    }
+
+    private void skipColorTable(final int flags) throws IOException {
+        if ((flags & 0x80) != 0) {
+            skipFully(3L << ((flags & 0x07) + 1));
+        }
+    }
+
+    private void skipSubBlocks() throws IOException {
+        for (int size = in.readUnsignedByte(); size != 0; size = in.readUnsignedByte()) {
+            skipFully(size);
+        }
+    }
+
+    private void skipFully(final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
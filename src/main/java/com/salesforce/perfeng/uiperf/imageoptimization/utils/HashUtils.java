@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility for hashing the content of files.
+ *
+ * @since 2.0.2
+ */
+public final class HashUtils {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private HashUtils() {
+        // Private to prevent developers from unnecessarily instantiating this
+        // class.
+    }
+
+    /**
+     * @return A new SHA-256 {@link MessageDigest}.
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException nsae) {
+            // Every JVM is required to support SHA-256.
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the content of the passed in file.
+     *
+     * @param file The file to hash.
+     * @return The hash as a lower case hex {@link String}.
+     * @throws IOException Thrown if the file can not be read.
+     */
+    public static String sha256Hex(final File file) throws IOException {
+        final MessageDigest digest = newSha256();
+        final byte[] buffer = new byte[64 * 1024];
+        try (final InputStream is = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the UTF-8 bytes of the passed in
+     * {@link String}.
+     *
+     * @param value The {@link String} to hash.
+     * @return The hash as a lower case hex {@link String}.
+     */
+    public static String sha256Hex(final String value) {
+        return toHex(newSha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param bytes The bytes to convert.
+     * @return The lower case hex representation of the passed in bytes.
+     */
+    public static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[(i * 2) + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
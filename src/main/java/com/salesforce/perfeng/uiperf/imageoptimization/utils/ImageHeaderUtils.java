@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor;
+
+/**
+ * Utility methods that answer questions about an image from its header and
+ * metadata blocks alone, without decoding any pixels. This class is
+ * threadsafe.
+ *
+ * @since 2.0.2
+ */
+public final class ImageHeaderUtils {
+
+    private final static Logger logger = LoggerFactory.getLogger(ImageHeaderUtils.class);
+
+    /**
+     * Private to prevent developers from unnecessarily instantiating this
+     * class.
+     */
+    private ImageHeaderUtils() {
+    }
+
+    /**
+     * Checks the header of the image to see if it can contain pixels with some
+     * percentage of transparency (Alpha).
+     * <ul>
+     * <li>A GIF without a Graphic Control Extension that sets the transparency
+     * flag has no transparent pixels.</li>
+     * <li>A gray scale, true color or indexed color PNG without a tRNS chunk
+     * has no transparent pixels.</li>
+     * <li>A JPEG never has transparent pixels.</li>
+     * </ul>
+     *
+     * @param file The image to check
+     * @return {@link Boolean#FALSE} if the image can not contain transparent
+     *         pixels or <code>null</code> if the header is not enough to tell,
+     *         in which case the pixels have to be checked.
+     * @see ImageProbe
+     */
+    public static Boolean hasAlphaTransparency(final File file) {
+        try {
+            return hasAlphaTransparency(ImageProbe.probe(file));
+        } catch (final IOException ioe) {
+            logger.debug("Unable to read the header of {}.", file.getPath(), ioe);
+            return null;
+        }
+    }
+
+    /**
+     * @param descriptor The description of the image to check
+     * @return {@link Boolean#FALSE} if the image can not contain transparent
+     *         pixels or <code>null</code> if the header is not enough to tell,
+     *         in which case the pixels have to be checked.
+     * @see #hasAlphaTransparency(File)
+     */
+    public static Boolean hasAlphaTransparency(final ImageDescriptor descriptor) {
+        return descriptor.isAlphaTransparencyPossible() ? null : Boolean.FALSE;
+    }
+}
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.GIF_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.GIF_MIME_TYPE;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.JPEG_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.JPEG_MIME_TYPE;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.PNG_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.PNG_MIME_TYPE;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.SVG_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.SVG_MIME_TYPE;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.WEBP_EXTENSION;
+import static com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.WEBP_MIME_TYPE;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor.ColorType;
+
+/**
+ * <p>Reads the header and metadata blocks of an image in a single pass and
+ * describes it with an {@link ImageDescriptor}, so the format, dimensions,
+ * color type, frame count, transparency and metadata are found without
+ * decoding any pixels.</p>
+ * <p>The format is found from the content, not the file extension. PNG, GIF,
+ * JPEG and WebP headers are parsed; SVG is recognized from the first
+ * {@value #SNIFF_LENGTH} bytes. A PNG is only read up to its first
+ * <code>IDAT</code> chunk, a JPEG up to its scan data, a still WebP up to its
+ * image data and a GIF or an animated WebP up to its second frame, so an
+ * animated GIF or WebP is described with 2 frames. Metadata
+ * blocks after that point are not known. A file that ends early is described
+ * with what was read up to that point. This class is threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public final class ImageProbe {
+
+    private final static Logger logger = LoggerFactory.getLogger(ImageProbe.class);
+
+    /**
+     * The number of bytes looked at to recognize the format.
+     */
+    static final int SNIFF_LENGTH = 4096;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /**
+     * Private to prevent developers from unnecessarily instantiating this
+     * class.
+     */
+    private ImageProbe() {
+    }
+
+    /**
+     * Describes the passed in image from its header and metadata blocks.
+     *
+     * @param file The image to describe.
+     * @return The description. Its format is <code>null</code> if the content
+     *         is not a known image format.
+     * @throws IOException Thrown if the file can not be read.
+     */
+    public static ImageDescriptor probe(final File file) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 2 * SNIFF_LENGTH))) {
+            in.mark(SNIFF_LENGTH);
+            final byte[] head = new byte[SNIFF_LENGTH];
+            int length = 0;
+            for (int read = 0; (length < head.length) && ((read = in.read(head, length, head.length - length)) >= 0);) {
+                length += read;
+            }
+            in.reset();
+
+            final Builder builder = new Builder();
+            try {
+                if (startsWith(head, length, PNG_SIGNATURE)) {
+                    probePng(in, builder);
+                } else if (startsWith(head, length, (byte) 'G', (byte) 'I', (byte) 'F')) {
+                    probeGif(in, builder);
+                } else if (startsWith(head, length, (byte) 0xff, (byte) 0xd8, (byte) 0xff)) {
+                    probeJpeg(in, builder);
+                } else if (startsWith(head, length, (byte) 'R', (byte) 'I', (byte) 'F', (byte) 'F') && (length >= 12)
+                        && (head[8] == 'W') && (head[9] == 'E') && (head[10] == 'B') && (head[11] == 'P')) {
+                    probeWebp(in, builder);
+                } else if (isSvg(head, length)) {
+                    builder.format(SVG_EXTENSION, SVG_MIME_TYPE);
+                    builder.alphaTransparencyPossible = true;
+                }
+            } catch (final IOException ioe) {
+                //Ended early or is malformed, so only part of it is described.
+                logger.debug("Unable to read all of the header of {}.", file.getPath(), ioe);
+                builder.alphaTransparencyPossible = true;
+            }
+            return builder.build();
+        }
+    }
+
+    private static void probePng(final DataInputStream in, final Builder builder) throws IOException {
+        builder.format(PNG_EXTENSION, PNG_MIME_TYPE);
+        skipFully(in, PNG_SIGNATURE.length);
+        while (true) {
+            final int length = in.readInt();
+            final byte[] type = new byte[4];
+            in.readFully(type);
+            final String chunk = new String(type, StandardCharsets.US_ASCII);
+            long remaining = length + 4L;
+            switch (chunk) {
+                case "IHDR":
+                    builder.width = in.readInt();
+                    builder.height = in.readInt();
+                    builder.bitDepth = in.readUnsignedByte();
+                    final int colorType = in.readUnsignedByte();
+                    remaining -= 10;
+                    if (colorType == 0) {
+                        builder.colorType = ColorType.GRAY;
+                    } else if (colorType == 2) {
+                        builder.colorType = ColorType.RGB;
+                    } else if (colorType == 3) {
+                        builder.colorType = ColorType.PALETTE;
+                    } else if (colorType == 4) {
+                        builder.colorType = ColorType.GRAY_ALPHA;
+                    } else if (colorType == 6) {
+                        builder.colorType = ColorType.RGB_ALPHA;
+                    }
+                    builder.alphaTransparencyPossible = (colorType == 4) || (colorType == 6);
+                    break;
+                case "tRNS":
+                    builder.alphaTransparencyPossible = true;
+                    break;
+                case "acTL":
+                    //Animated PNG
+                    builder.frameCount = in.readInt();
+                    remaining -= 4;
+                    break;
+                case "tEXt":
+                case "zTXt":
+                case "iTXt":
+                case "eXIf":
+                case "iCCP":
+                case "tIME":
+                    builder.metadata.add(chunk);
+                    break;
+                case "IDAT":
+                case "IEND":
+                    //PLTE, tRNS and acTL have to come before the image data.
+                    return;
+                default:
+                    break;
+            }
+            skipFully(in, remaining);
+        }
+    }
+
+    private static void probeGif(final DataInputStream in, final Builder builder) throws IOException {
+        builder.format(GIF_EXTENSION, GIF_MIME_TYPE);
+        builder.colorType = ColorType.PALETTE;
+        final GifBlockParser parser = new GifBlockParser(in);
+        builder.width = parser.getWidth();
+        builder.height = parser.getHeight();
+        builder.bitDepth = parser.getBitDepth();
+        builder.frameCount = 0;
+        for (GifBlockParser.Block block = parser.next(); block != GifBlockParser.Block.TRAILER; block = parser.next()) {
+            if ((block == GifBlockParser.Block.GRAPHIC_CONTROL_EXTENSION) && parser.isTransparent()) {
+                builder.alphaTransparencyPossible = true;
+            } else if (block == GifBlockParser.Block.IMAGE) {
+                builder.frameCount = parser.getFrameCount();
+                if (builder.frameCount >= 2) {
+                    //Animated, like ImageUtils.isAminatedGif stop at the
+                    //second frame. The transparency of the other frames is
+                    //not known.
+                    builder.alphaTransparencyPossible = true;
+                    return;
+                }
+            } else if (block == GifBlockParser.Block.EXTENSION) {
+                if (parser.getExtensionLabel() == 0xfe) {
+                    builder.metadata.add("Comment");
+                } else if ((parser.getExtensionLabel() == 0xff)
+                        && !parser.getApplicationIdentifier().startsWith("NETSCAPE") && !parser.getApplicationIdentifier().startsWith("ANIMEXTS")) {
+                    //Anything but the loop count, e.g. XMP
+                    builder.metadata.add(parser.getApplicationIdentifier().trim());
+                }
+            }
+        }
+    }
+
+    private static void probeJpeg(final DataInputStream in, final Builder builder) throws IOException {
+        builder.format(JPEG_EXTENSION, JPEG_MIME_TYPE);
+        skipFully(in, 2);
+        while (true) {
+            if (in.readUnsignedByte() != 0xff) {
+                throw new IOException("Expected a JPEG marker.");
+            }
+            int marker = in.readUnsignedByte();
+            while (marker == 0xff) {
+                marker = in.readUnsignedByte();
+            }
+            if ((marker == 0x01) || ((marker >= 0xd0) && (marker <= 0xd8))) {
+                //Markers without a segment
+                continue;
+            }
+            if ((marker == 0xd9) || (marker == 0xda)) {
+                //End of image or start of the scan data
+                return;
+            }
+            long remaining = in.readUnsignedShort() - 2L;
+            if ((marker >= 0xc0) && (marker <= 0xcf) && (marker != 0xc4) && (marker != 0xc8) && (marker != 0xcc)) {
+                //Start of frame
+                builder.bitDepth = in.readUnsignedByte();
+                builder.height = in.readUnsignedShort();
+                builder.width = in.readUnsignedShort();
+                final int components = in.readUnsignedByte();
+                remaining -= 6;
+                if (components == 1) {
+                    builder.colorType = ColorType.GRAY;
+                } else if (components == 3) {
+                    builder.colorType = ColorType.RGB;
+                } else if (components == 4) {
+                    builder.colorType = ColorType.CMYK;
+                }
+            } else if ((marker >= 0xe0) && (marker <= 0xef)) {
+                final byte[] identifier = new byte[(int) Math.min(remaining, 32)];
+                in.readFully(identifier);
+                remaining -= identifier.length;
+                final String name = getApplicationSegmentName(marker, new String(identifier, StandardCharsets.ISO_8859_1));
+                if (name != null) {
+                    builder.metadata.add(name);
+                }
+            } else if (marker == 0xfe) {
+                builder.metadata.add("Comment");
+            }
+            skipFully(in, remaining);
+        }
+    }
+
+    /**
+     * @return The name of the metadata held by the APPn segment or
+     *         <code>null</code> if it only describes how to decode the image.
+     */
+    private static String getApplicationSegmentName(final int marker, final String identifier) {
+        if (identifier.startsWith("JFIF") || identifier.startsWith("JFXX") || identifier.startsWith("Adobe")) {
+            return null;
+        }
+        if ((marker == 0xe1) && identifier.startsWith("Exif")) {
+            return "Exif";
+        }
+        if ((marker == 0xe1) && identifier.startsWith("http://ns.adobe.com/xap/")) {
+            return "XMP";
+        }
+        if ((marker == 0xe2) && identifier.startsWith("ICC_PROFILE")) {
+            return "ICC";
+        }
+        if ((marker == 0xed) && identifier.startsWith("Photoshop")) {
+            return "IPTC";
+        }
+        return "APP" + (marker - 0xe0);
+    }
+
+    private static void probeWebp(final DataInputStream in, final Builder builder) throws IOException {
+        builder.format(WEBP_EXTENSION, WEBP_MIME_TYPE);
+        builder.bitDepth = 8;
+        skipFully(in, 12);
+        int frames = 0;
+        chunks: while (true) {
+            final byte[] fourCc = new byte[4];
+            final int first = in.read();
+            if (first < 0) {
+                break;
+            }
+            fourCc[0] = (byte) first;
+            in.readFully(fourCc, 1, 3);
+            final String chunk = new String(fourCc, StandardCharsets.US_ASCII);
+            final long size = readLittleEndian(in, 4);
+            long remaining = size + (size & 1);
+            switch (chunk) {
+                case "VP8X":
+                    final int flags = in.readUnsignedByte();
+                    skipFully(in, 3);
+                    builder.width = (int) readLittleEndian(in, 3) + 1;
+                    builder.height = (int) readLittleEndian(in, 3) + 1;
+                    remaining -= 10;
+                    builder.alphaTransparencyPossible = (flags & 0x10) != 0;
+                    break;
+                case "VP8L":
+                    skipFully(in, 1);
+                    final long bits = readLittleEndian(in, 4);
+                    remaining -= 5;
+                    if (builder.width == ImageDescriptor.UNKNOWN) {
+                        builder.width = (int) (bits & 0x3fff) + 1;
+                        builder.height = (int) ((bits >> 14) & 0x3fff) + 1;
+                    }
+                    //The alpha_is_used hint
+                    builder.alphaTransparencyPossible |= ((bits >> 28) & 1) != 0;
+                    //The image data of a still image
+                    break chunks;
+                case "VP8 ":
+                    skipFully(in, 6);
+                    final int width = (int) readLittleEndian(in, 2) & 0x3fff;
+                    final int height = (int) readLittleEndian(in, 2) & 0x3fff;
+                    remaining -= 10;
+                    if (builder.width == ImageDescriptor.UNKNOWN) {
+                        builder.width = width;
+                        builder.height = height;
+                    }
+                    break chunks;
+                case "ALPH":
+                    builder.alphaTransparencyPossible = true;
+                    break;
+                case "ANMF":
+                    frames++;
+                    if (frames >= 2) {
+                        break chunks;
+                    }
+                    break;
+                case "ICCP":
+                    builder.metadata.add("ICC");
+                    break;
+                case "EXIF":
+                    builder.metadata.add("Exif");
+                    break;
+                case "XMP ":
+                    builder.metadata.add("XMP");
+                    break;
+                default:
+                    break;
+            }
+            skipFully(in, remaining);
+        }
+        builder.colorType = builder.alphaTransparencyPossible ? ColorType.RGB_ALPHA : ColorType.RGB;
+        builder.frameCount = Math.max(1, frames);
+    }
+
+    private static boolean isSvg(final byte[] head, final int length) {
+        final String text = new String(head, 0, length, StandardCharsets.UTF_8).trim();
+        return (text.startsWith("<") || text.startsWith("\uFEFF<")) && text.contains("<svg");
+    }
+
+    private static boolean startsWith(final byte[] head, final int length, final byte... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readLittleEndian(final DataInputStream in, final int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value |= ((long) in.readUnsignedByte()) << (8 * i);
+        }
+        return value;
+    }
+
+    private static void skipFully(final DataInputStream in, final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+    /**
+     * Collects the values of the {@link ImageDescriptor} while the header is
+     * read.
+     */
+    private static final class Builder {
+        String format;
+        String mimeType;
+        int width = ImageDescriptor.UNKNOWN;
+        int height = ImageDescriptor.UNKNOWN;
+        ColorType colorType = ColorType.UNKNOWN;
+        int bitDepth = ImageDescriptor.UNKNOWN;
+        int frameCount = 1;
+        boolean alphaTransparencyPossible;
+        final List<String> metadata = new ArrayList<>();
+
+        void format(final String extension, final String type) {
+            this.format = extension;
+            this.mimeType = type;
+        }
+
+        ImageDescriptor build() {
+            return new ImageDescriptor(format, mimeType, width, height, colorType, bitDepth, frameCount, alphaTransparencyPossible || (format == null), metadata);
+        }
+    }
+}
@@ -3,10 +3,9 @@ package com.salesforce.perfeng.uiperf.imageoptimization.utils;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Toolkit;
-import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
-import java.awt.image.ColorConvertOp;
-import java.awt.image.PixelGrabber;
+import java.awt.image.DataBuffer;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -21,11 +20,14 @@ import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor;
+import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService;
 
 /**
  * Utility methods used to interact with images. This class is threadsafe.
@@ -37,6 +39,8 @@ public class ImageUtils {
 
     private final static Logger logger = LoggerFactory.getLogger(ImageUtils.class);
 
+    private final static BandedImageComparator bandedImageComparator = new BandedImageComparator();
+
     /**
      * Name of Image Magic's {@value #CONVERT_BINARY} binary application used to
      * convert one image into another image by changing it's file type. This
@@ -57,63 +61,94 @@ public class ImageUtils {
         this.convertBinaryAppLocation = binaryAppLocation + CONVERT_BINARY;
     }
     
-    private static final boolean equals(final int[] data1, final int[] data2) {
-        final int length = data1.length;
-        if (length != data2.length) {
-            logger.debug("File lengths are different.");
-            return false;
-        }
-        for (int i = 0; i < length; i++) {
-            if (data1[i] != data2[i]) {
-
-                //If the alpha is 0 for both that means that the pixels are 100%
-                //transparent and the color does not matter. Return false if
-                //only 1 is 100% transparent.
-                if ((((data1[i] >> 24) & 0xff) != 0) || (((data2[i] >> 24) & 0xff) != 0)) {
-                    logger.debug("The pixel {} is different.", Integer.valueOf(i));
-                    return false;
-                }
-                logger.debug("Both pixles at spot {} are different but 100% transparent.", Integer.valueOf(i));
-            }
+    /**
+     * @return The number of bytes held by the raster of the passed in image.
+     */
+    private static final long getSizeInBytes(final BufferedImage image) {
+        if (image == null) {
+            return 0;
         }
-        logger.debug("Both groups of pixels are the same.");
-        return true;
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        return ((long) buffer.getSize()) * buffer.getNumBanks() * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
     }
 
-    private static final int[] getPixels(final BufferedImage img, final File file) {
-
-        final int width = img.getWidth();
-        final int height = img.getHeight();
-        final int[] pixelData = new int[width * height];
-
-        final Image pixelImg;
-        if (img.getColorModel().getColorSpace() == ColorSpace.getInstance(ColorSpace.CS_sRGB)) {
-            pixelImg = img;
-        } else {
-            pixelImg = new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_sRGB), null).filter(img, null);
+    /**
+     * Decodes the first image in the passed in file with ImageIO, keeping the
+     * native raster so no intermediate copies are made.
+     *
+     * @return The image or <code>null</code> if ImageIO is unable to read it.
+     */
+    private static final BufferedImage decode(final File file) {
+        try {
+            return ImageIO.read(file);
+        } catch (final IOException | RuntimeException e) {
+            logger.debug("ImageIO is unable to read {}.", file.getPath(), e);
+            return null;
         }
+    }
 
-        final PixelGrabber pg = new PixelGrabber(pixelImg, 0, 0, width, height, pixelData, 0, width);
+    /**
+     * Decodes the passed in file, using the cache when one is passed in. Files
+     * that ImageIO can not read are decoded with the AWT Toolkit instead.
+     */
+    private static final BufferedImage getImage(final File file, final DecodedImageCache decodedImages) {
+        final BufferedImage image = (decodedImages == null) ? decode(file) : decodedImages.get(file, "imageio", ImageUtils::decode, ImageUtils::getSizeInBytes);
+        if (image != null) {
+            return image;
+        }
+        return getToolkitImage(file, decodedImages);
+    }
 
-        try {
-            if (!pg.grabPixels()) {
-                throw new RuntimeException();
-            }
-        } catch (final InterruptedException ie) {
-            throw new ImageFileOptimizationException(file.getPath(), ie);
+    private static final BufferedImage getToolkitImage(final File file, final DecodedImageCache decodedImages) {
+        if (decodedImages == null) {
+            return decodeWithToolkit(file);
         }
+        return decodedImages.get(file, "toolkit", ImageUtils::decodeWithToolkit, ImageUtils::getSizeInBytes);
+    }
 
-        return pixelData;
+    /**
+     * Reads the passed in image with {@link ImageIO#read(File)}. When the same
+     * file was already read with the same cache the earlier result is
+     * returned, so the returned image must not be modified.
+     *
+     * @param file The image to read.
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always read the file.
+     * @return The image or <code>null</code> if no registered reader can read
+     *         it.
+     * @throws IOException Thrown if the image can not be read.
+     * @since 2.0.2
+     */
+    public final static BufferedImage read(final File file, final DecodedImageCache decodedImages) throws IOException {
+        if (decodedImages == null) {
+            return ImageIO.read(file);
+        }
+        final BufferedImage image = decodedImages.get(file, "imageio", ImageUtils::decode, ImageUtils::getSizeInBytes);
+        if (image == null) {
+            throw new IOException("ImageIO is unable to read " + file.getPath());
+        }
+        return image;
     }
 
     /**
-     * Gets the {@link BufferedImage} from the passed in {@link File}.
+     * Gets the {@link BufferedImage} from the passed in {@link File}. The image
+     * is decoded with ImageIO and only falls back to the AWT Toolkit if ImageIO
+     * is unable to read it.
      *
      * @param file The <code>File</code> to use.
      * @return The resulting <code>BufferedImage</code>
      */
-    @SuppressWarnings("unused")
     final static BufferedImage getBufferedImage(final File file) {
+        return getImage(file, null);
+    }
+
+    /**
+     * Decodes the passed in file with the AWT Toolkit and draws it into a new
+     * {@link BufferedImage#TYPE_INT_ARGB} image. This is slow, so it is only
+     * used for images ImageIO is unable to read and to confirm differences
+     * found in images decoded by ImageIO.
+     */
+    final static BufferedImage decodeWithToolkit(final File file) {
         Image image;
 
         try (final FileInputStream inputStream = new FileInputStream(file)) {
@@ -144,8 +179,29 @@ public class ImageUtils {
      * @return <code>true</code> if they are equal, otherwise
      *         <code>false</code>.
      */
-    private final static boolean visuallyCompareJava(final File file1, final File file2) {
-        return equals(getPixels(getBufferedImage(file1), file1), getPixels(getBufferedImage(file2), file2));
+    private final static boolean visuallyCompareJava(final File file1, final File file2, final DecodedImageCache decodedImages) {
+        //Large images are compared band by band so they are never fully
+        //decoded.
+        final Boolean banded = bandedImageComparator.compare(file1, file2);
+        if (banded != null) {
+            return banded.booleanValue();
+        }
+        if (PixelComparator.equals(getImage(file1, decodedImages), getImage(file2, decodedImages))) {
+            return true;
+        }
+        //ImageIO decodes some GIFs differently than browsers do (e.g. a
+        //transparent index outside of the palette or a first frame smaller
+        //than the logical screen), so confirm a difference with the Toolkit.
+        //Every other difference is final.
+        if (!isGif(file1) && !isGif(file2)) {
+            return false;
+        }
+        logger.debug("Confirming the difference between \"{}\" and \"{}\" with the AWT Toolkit.", file1.getPath(), file2.getPath());
+        return PixelComparator.equals(getToolkitImage(file1, decodedImages), getToolkitImage(file2, decodedImages));
+    }
+
+    private final static boolean isGif(final File file) {
+        return IImageOptimizationService.GIF_EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(file.getName()));
     }
 
     /**
@@ -158,6 +214,22 @@ public class ImageUtils {
      * @return <code>true</code> if both images are visually the same.
      */
     public final static boolean visuallyCompare(final File file1, final File file2) {
+        return visuallyCompare(file1, file2, null);
+    }
+
+    /**
+     * Compares file1 to file2 to see if they are the same based on a visual
+     * pixel by pixel comparison, reusing the pixels already decoded by the
+     * passed in cache.
+     *
+     * @param file1 Image 1 to compare
+     * @param file2 Image 2 to compare
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always decode the files.
+     * @return <code>true</code> if both images are visually the same.
+     * @since 2.0.2
+     */
+    public final static boolean visuallyCompare(final File file1, final File file2, final DecodedImageCache decodedImages) {
 
         logger.debug("Start comparing \"{}\" and \"{}\".", file1.getPath(), file2.getPath());
 
@@ -165,7 +237,7 @@ public class ImageUtils {
             return true;
         }
 
-        final boolean answer = visuallyCompareJava(file1, file2);
+        final boolean answer = visuallyCompareJava(file1, file2, decodedImages);
 
         if (!answer) {
             logger.info("The files \"{}\" and \"{}\" are not pixel by pixel the same image. Manual comparison required.", file1.getPath(), file2.getPath());
@@ -176,22 +248,77 @@ public class ImageUtils {
         return answer;
     }
 
+    /**
+     * Checks that the image can be decoded at all, first with ImageIO and then
+     * with the AWT Toolkit.
+     *
+     * @param file The image to check
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always decode the file.
+     * @return <code>false</code> if the image is corrupted.
+     * @since 2.0.2
+     */
+    public final static boolean isReadable(final File file, final DecodedImageCache decodedImages) {
+        try {
+            return getImage(file, decodedImages) != null;
+        } catch (final RuntimeException e) {
+            logger.debug("Unable to decode {}.", file.getPath(), e);
+            return false;
+        }
+    }
+
     /**
      * @param file The image to check
      * @return <code>true</code> if the image contains one or more pixels with
      *         some percentage of transparency (Alpha)
      */
     public final static boolean containsAlphaTransparency(final File file) {
+        return containsAlphaTransparency(file, null);
+    }
+
+    /**
+     * @param file The image to check
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always decode the file.
+     * @return <code>true</code> if the image contains one or more pixels with
+     *         some percentage of transparency (Alpha)
+     * @since 2.0.2
+     */
+    public final static boolean containsAlphaTransparency(final File file, final DecodedImageCache decodedImages) {
+        return containsAlphaTransparency(file, null, decodedImages);
+    }
+
+    /**
+     * @param file The image to check
+     * @param descriptor The description of an image with the same pixels, e.g.
+     *                   the original of a lossless optimization, or
+     *                   <code>null</code> to read the header of the file.
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always decode the file.
+     * @return <code>true</code> if the image contains one or more pixels with
+     *         some percentage of transparency (Alpha)
+     * @since 2.0.2
+     */
+    public final static boolean containsAlphaTransparency(final File file, final ImageDescriptor descriptor, final DecodedImageCache decodedImages) {
         logger.debug("Start Alpha pixel check for {}.", file.getPath());
 
         final boolean answer = false;
-        for (final int pixel : getPixels(getBufferedImage(file), file)) {
-            //If the alpha is 0 for both that means that the pixels are 100%
-            //transparent and the color does not matter. Return false if
-            //only 1 is 100% transparent.
-            if (((pixel >> 24) & 0xff) != 255) {
-                logger.debug("The image contains Aplha Transparency.");
-                return true;
+        if (Boolean.FALSE.equals((descriptor == null) ? ImageHeaderUtils.hasAlphaTransparency(file) : ImageHeaderUtils.hasAlphaTransparency(descriptor))) {
+            logger.debug("The header shows the image does not contain Aplha Transparency.");
+            return answer;
+        }
+        final BufferedImage image = getImage(file, decodedImages);
+        if (image.getColorModel().hasAlpha()) {
+            final int width = image.getWidth();
+            final int[] row = new int[width];
+            for (int y = 0, height = image.getHeight(); y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (final int pixel : row) {
+                    if (((pixel >> 24) & 0xff) != 255) {
+                        logger.debug("The image contains Aplha Transparency.");
+                        return true;
+                    }
+                }
             }
         }
 
@@ -256,10 +383,45 @@ public class ImageUtils {
      * @return <code>true</code> if it is an animated gif.
      */
     public final static boolean isAminatedGif(final File file) {
+        return isAminatedGif(file, null);
+    }
+
+    /**
+     * Checks to see if the image is an animated gif, reusing the answer
+     * already found by the passed in cache.
+     *
+     * @param file The file to check
+     * @param decodedImages The cache of the current task or <code>null</code>
+     *                      to always read the file.
+     * @return <code>true</code> if it is an animated gif.
+     * @since 2.0.2
+     */
+    public final static boolean isAminatedGif(final File file, final DecodedImageCache decodedImages) {
+        if (decodedImages == null) {
+            return readIsAminatedGif(file);
+        }
+        return decodedImages.get(file, "animated", ImageUtils::readIsAminatedGif, animated -> 0L).booleanValue();
+    }
+
+    private final static Boolean readIsAminatedGif(final File file) {
+
+        //Walk the GIF blocks and stop at the second frame instead of letting
+        //ImageIO scan the whole file.
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            final GifBlockParser parser = new GifBlockParser(in);
+            for (GifBlockParser.Block block = parser.next(); block != GifBlockParser.Block.TRAILER; block = parser.next()) {
+                if (parser.getFrameCount() > 1) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        } catch (final IOException ioe) {
+            logger.debug("Unable to parse the GIF blocks of {}.", file.getPath(), ioe);
+        }
 
         try (final ImageInputStream stream = ImageIO.createImageInputStream(file)) {
             if (stream == null) {
-                return true;
+                return Boolean.TRUE;
             }
             final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
             if (!readers.hasNext()) {
@@ -267,7 +429,7 @@ public class ImageUtils {
             }
             final ImageReader reader = readers.next();
             reader.setInput(stream); // don't omit this line!
-            return (reader.getNumImages(true) > 1); // don't use false!
+            return Boolean.valueOf(reader.getNumImages(true) > 1); // don't use false!
         } catch (final IOException ioe) {
             throw new RuntimeException(ioe);
         }
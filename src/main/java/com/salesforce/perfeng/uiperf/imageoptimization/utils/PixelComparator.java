@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Pixel by pixel comparison of two decoded images. Large images are split
+ * into ranges of rows that are compared in parallel on the common
+ * {@link ForkJoinPool}, and every range stops as soon as one of them finds a
+ * difference.</p>
+ * <p>The common case of identical pixels is checked with
+ * {@link Arrays#mismatch(int[], int, int, int[], int, int)}, which the JVM
+ * vectorizes. Only the pixels after a mismatch are checked one by one, where
+ * two 100% transparent pixels are equal no matter what their color is. This
+ * class is threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+final class PixelComparator {
+
+    private final static Logger logger = LoggerFactory.getLogger(PixelComparator.class);
+
+    /**
+     * Ranges with fewer pixels or samples than this are not split any
+     * further.
+     */
+    private static final int MIN_PARALLEL_SIZE = 256 * 1024;
+
+    /**
+     * Private to prevent developers from unnecessarily instantiating this
+     * class.
+     */
+    private PixelComparator() {
+    }
+
+    /**
+     * Compares both images pixel by pixel. When both images share the same
+     * color model and raster layout the native sample arrays are compared
+     * directly, otherwise the rows are converted to sRGB ARGB and compared.
+     *
+     * @param image1 Image 1 to compare
+     * @param image2 Image 2 to compare
+     * @return <code>true</code> if both images are visually the same.
+     */
+    static boolean equals(final BufferedImage image1, final BufferedImage image2) {
+        final int width = image1.getWidth();
+        final int height = image1.getHeight();
+        if ((width != image2.getWidth()) || (height != image2.getHeight())) {
+            logger.debug("The image dimensions are different.");
+            return false;
+        }
+
+        if (hasSameLayout(image1, image2) && equals(image1.getRaster().getDataBuffer(), image2.getRaster().getDataBuffer())) {
+            logger.debug("Both groups of samples are the same.");
+            return true;
+        }
+
+        //Different samples can still be the same pixels, e.g. a different
+        //color for a 100% transparent pixel, so fall back to comparing ARGB.
+        final boolean answer = ForkJoinPool.commonPool().invoke(new RowComparison(image1, image2, 0, height, new AtomicBoolean())).booleanValue();
+        logger.debug(answer ? "Both groups of pixels are the same." : "The pixels are different.");
+        return answer;
+    }
+
+    /**
+     * Compares the native samples of both buffers.
+     *
+     * @param buffer1 Buffer 1 to compare
+     * @param buffer2 Buffer 2 to compare
+     * @return <code>true</code> if both buffers hold the same samples.
+     */
+    static boolean equals(final DataBuffer buffer1, final DataBuffer buffer2) {
+        if ((buffer1.getDataType() != buffer2.getDataType())
+                || (buffer1.getSize() != buffer2.getSize())
+                || (buffer1.getNumBanks() != buffer2.getNumBanks())
+                || !Arrays.equals(buffer1.getOffsets(), buffer2.getOffsets())) {
+            return false;
+        }
+        for (int bank = 0, banks = buffer1.getNumBanks(); bank < banks; bank++) {
+            final Object data1 = getData(buffer1, bank);
+            final Object data2 = getData(buffer2, bank);
+            if ((data1 == null) || (data2 == null)) {
+                return false;
+            }
+            final int length = Array.getLength(data1);
+            if ((length != Array.getLength(data2))
+                    || !ForkJoinPool.commonPool().invoke(new SampleComparison(data1, data2, 0, length, new AtomicBoolean())).booleanValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasSameLayout(final BufferedImage image1, final BufferedImage image2) {
+        final WritableRaster raster1 = image1.getRaster();
+        final WritableRaster raster2 = image2.getRaster();
+        return (image1.getType() == image2.getType())
+                && (raster1.getParent() == null) && (raster2.getParent() == null)
+                && (raster1.getSampleModelTranslateX() == 0) && (raster1.getSampleModelTranslateY() == 0)
+                && (raster2.getSampleModelTranslateX() == 0) && (raster2.getSampleModelTranslateY() == 0)
+                && image1.getColorModel().equals(image2.getColorModel())
+                && image1.getSampleModel().equals(image2.getSampleModel());
+    }
+
+    private static Object getData(final DataBuffer buffer, final int bank) {
+        if (buffer instanceof DataBufferByte) {
+            return ((DataBufferByte) buffer).getData(bank);
+        }
+        if (buffer instanceof DataBufferInt) {
+            return ((DataBufferInt) buffer).getData(bank);
+        }
+        if (buffer instanceof DataBufferUShort) {
+            return ((DataBufferUShort) buffer).getData(bank);
+        }
+        if (buffer instanceof DataBufferShort) {
+            return ((DataBufferShort) buffer).getData(bank);
+        }
+        return null;
+    }
+
+    /**
+     * Compares a range of sRGB ARGB pixels. Pixels that are 100% transparent
+     * in both rows are equal no matter what their color is.
+     *
+     * @return The index of the first different pixel or <code>-1</code> if
+     *         the range is visually the same.
+     */
+    static int mismatch(final int[] row1, final int[] row2, final int from, final int to) {
+        int x = from;
+        while (x < to) {
+            final int offset = Arrays.mismatch(row1, x, to, row2, x, to);
+            if (offset < 0) {
+                return -1;
+            }
+            x += offset;
+
+            //If the alpha is 0 for both that means that the pixels are 100%
+            //transparent and the color does not matter. Return false if
+            //only 1 is 100% transparent.
+            if (((row1[x] >>> 24) != 0) || ((row2[x] >>> 24) != 0)) {
+                return x;
+            }
+            x++;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a range of rows converted to sRGB ARGB, splitting it in half
+     * while it is large.
+     */
+    private static final class RowComparison extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient BufferedImage image1;
+        private final transient BufferedImage image2;
+        private final int fromRow;
+        private final int toRow;
+        private final AtomicBoolean different;
+
+        RowComparison(final BufferedImage image1, final BufferedImage image2, final int fromRow, final int toRow, final AtomicBoolean different) {
+            this.image1 = image1;
+            this.image2 = image2;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.different = different;
+        }
+
+        @Override
+        protected Boolean compute() {
+            final int width = image1.getWidth();
+            final int rows = toRow - fromRow;
+            if ((rows > 1) && (((long) rows * width) > MIN_PARALLEL_SIZE)) {
+                final int middle = fromRow + (rows / 2);
+                final RowComparison top = new RowComparison(image1, image2, fromRow, middle, different);
+                top.fork();
+                final boolean bottom = new RowComparison(image1, image2, middle, toRow, different).compute().booleanValue();
+                return Boolean.valueOf(top.join().booleanValue() && bottom);
+            }
+
+            final int[] row1 = new int[width];
+            final int[] row2 = new int[width];
+            for (int y = fromRow; y < toRow; y++) {
+                if (different.get()) {
+                    return Boolean.FALSE;
+                }
+                image1.getRGB(0, y, width, 1, row1, 0, width);
+                image2.getRGB(0, y, width, 1, row2, 0, width);
+                final int x = mismatch(row1, row2, 0, width);
+                if (x >= 0) {
+                    logger.debug("The pixel {},{} is different.", Integer.valueOf(x), Integer.valueOf(y));
+                    different.set(true);
+                    return Boolean.FALSE;
+                }
+            }
+            return Boolean.TRUE;
+        }
+    }
+
+    /**
+     * Compares a range of two native sample arrays of the same type, splitting
+     * it in half while it is large.
+     */
+    private static final class SampleComparison extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Object data1;
+        private final transient Object data2;
+        private final int from;
+        private final int to;
+        private final AtomicBoolean different;
+
+        SampleComparison(final Object data1, final Object data2, final int from, final int to, final AtomicBoolean different) {
+            this.data1 = data1;
+            this.data2 = data2;
+            this.from = from;
+            this.to = to;
+            this.different = different;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if ((to - from) > MIN_PARALLEL_SIZE) {
+                final int middle = from + ((to - from) / 2);
+                final SampleComparison first = new SampleComparison(data1, data2, from, middle, different);
+                first.fork();
+                final boolean second = new SampleComparison(data1, data2, middle, to, different).compute().booleanValue();
+                return Boolean.valueOf(first.join().booleanValue() && second);
+            }
+            if (different.get()) {
+                return Boolean.FALSE;
+            }
+
+            final boolean same;
+            if (data1 instanceof byte[]) {
+                same = Arrays.mismatch((byte[]) data1, from, to, (byte[]) data2, from, to) < 0;
+            } else if (data1 instanceof int[]) {
+                same = Arrays.mismatch((int[]) data1, from, to, (int[]) data2, from, to) < 0;
+            } else {
+                same = Arrays.mismatch((short[]) data1, from, to, (short[]) data2, from, to) < 0;
+            }
+            if (!same) {
+                different.set(true);
+            }
+            return Boolean.valueOf(same);
+        }
+    }
+}
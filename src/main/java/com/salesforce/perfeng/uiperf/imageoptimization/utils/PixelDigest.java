@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Hashes the pixels of an image, instead of the bytes of its file, so two
+ * images that look the same have the same digest no matter how they are
+ * encoded. Every pixel is hashed as sRGB ARGB, and every 100% transparent
+ * pixel is hashed as <code>0</code> since its color does not matter. The
+ * dimensions are part of the digest.</p>
+ * <p>Images with more than {@value #MAX_BAND_SIZE_IN_PIXELS} pixels are read
+ * and hashed band by band, so they are never fully decoded. This class is
+ * threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public final class PixelDigest {
+
+    private final static Logger logger = LoggerFactory.getLogger(PixelDigest.class);
+
+    /**
+     * The maximum number of pixels decoded at once, 16 megapixels.
+     */
+    static final long MAX_BAND_SIZE_IN_PIXELS = 4096L * 4096L;
+
+    /**
+     * Private to prevent developers from unnecessarily instantiating this
+     * class.
+     */
+    private PixelDigest() {
+    }
+
+    /**
+     * Calculates the alpha normalized SHA-256 of the pixels of the passed in
+     * image. Only the first frame of an animated image is hashed.
+     *
+     * @param file The image to hash.
+     * @return The digest as a lower case hex {@link String}.
+     * @throws IOException Thrown if the image can not be read.
+     */
+    public static String digest(final File file) throws IOException {
+        final MessageDigest digest = HashUtils.newSha256();
+        try (final ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            final Iterator<ImageReader> readers = (stream == null) ? null : ImageIO.getImageReaders(stream);
+            if ((readers != null) && readers.hasNext()) {
+                final ImageReader reader = readers.next();
+                try {
+                    reader.setInput(stream, true, true);
+                    digest(reader, digest);
+                    return HashUtils.toHex(digest.digest());
+                } catch (final IOException | RuntimeException e) {
+                    logger.debug("ImageIO is unable to read {}.", file.getPath(), e);
+                    digest.reset();
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        // The same fallback as the pixel by pixel comparison.
+        final BufferedImage image = ImageUtils.decodeWithToolkit(file);
+        update(digest, image.getWidth(), image.getHeight());
+        update(digest, image, 0, image.getHeight());
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private static void digest(final ImageReader reader, final MessageDigest digest) throws IOException {
+        final int width = reader.getWidth(0);
+        final int height = reader.getHeight(0);
+        update(digest, width, height);
+
+        final int bandHeight = (int) Math.max(1, Math.min(height, MAX_BAND_SIZE_IN_PIXELS / Math.max(1, width)));
+        for (int y = 0; y < height; y += bandHeight) {
+            final ImageReadParam param = reader.getDefaultReadParam();
+            if (bandHeight < height) {
+                param.setSourceRegion(new Rectangle(0, y, width, Math.min(bandHeight, height - y)));
+            }
+            final BufferedImage band = reader.read(0, param);
+            update(digest, band, 0, band.getHeight());
+        }
+    }
+
+    private static void update(final MessageDigest digest, final int width, final int height) {
+        digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+    }
+
+    private static void update(final MessageDigest digest, final BufferedImage image, final int fromRow, final int toRow) {
+        final int width = image.getWidth();
+        final int[] row = new int[width];
+        final ByteBuffer bytes = ByteBuffer.allocate(4 * width);
+        for (int y = fromRow; y < toRow; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            bytes.clear();
+            for (final int pixel : row) {
+                //If the alpha is 0 the pixel is 100% transparent and the color
+                //does not matter.
+                bytes.putInt(((pixel >>> 24) == 0) ? 0 : pixel);
+            }
+            digest.update(bytes.array());
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+
+/**
+ * <p>Lossless pre-pass that rewrites a PNG with fewer bits per pixel before
+ * the PNG tools run, so they start from a smaller input. The reductions
+ * are:</p>
+ * <ul>
+ * <li>images with at most 256 colors, counting the transparency, to a 1, 2,
+ * 4 or 8 bit palette,</li>
+ * <li>fully opaque images to RGB without an alpha channel,</li>
+ * <li>16 bit samples that are a multiple of 257 to 8 bit samples.</li>
+ * </ul>
+ * <p>The palette lists the translucent colors first, so the transparency
+ * chunk is short, followed by the other colors from dark to light, so the
+ * indexes of neighbouring pixels are close and compress better. Gray images
+ * are written as a palette instead of gray scale, because ImageIO decodes gray
+ * scale PNGs through a linear color space and would not read them back as
+ * the same pixels. optipng turns such a palette into gray scale itself when
+ * that is smaller.</p>
+ * <p>The color of a 100% transparent pixel is never seen, but leftover colors
+ * under them cost a lot of bytes after deflate. They are rewritten as set by
+ * {@link TransparentPixels}, which can not change how the image looks. The
+ * palette always merges them into one black entry.</p>
+ * <p>Gray scale sources, animated PNGs, images larger than
+ * {@value #MAX_SIZE_IN_PIXELS} pixels and images with a color profile or
+ * gamma are left alone, as are images whose rewritten pixels are not the same
+ * as the original. The rewritten image has no ancillary chunks. This class is
+ * threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public final class PngColorReducer {
+
+    private final static Logger logger = LoggerFactory.getLogger(PngColorReducer.class);
+
+    /**
+     * Larger images are not reduced, so they are never fully decoded.
+     */
+    static final long MAX_SIZE_IN_PIXELS = 4096L * 4096L;
+
+    private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
+
+    /**
+     * Chunks that change how the colors are displayed, which ImageIO ignores
+     * when decoding.
+     */
+    private static final Set<String> COLOR_CHUNKS = Set.of("iCCP", "gAMA", "cHRM");
+
+    /**
+     * How the color of 100% transparent pixels is rewritten in images that
+     * keep their alpha channel.
+     */
+    public enum TransparentPixels {
+        /** The colors are kept unless the image becomes a palette. */
+        NONE,
+        /** The pixels become transparent black. */
+        ZERO,
+        /**
+         * The pixels take the color of the pixel to their left, or above for
+         * the first column, so the filtered bytes are mostly 0.
+         */
+        PREDICT
+    }
+
+    /**
+     * Private to prevent developers from unnecessarily instantiating this
+     * class.
+     */
+    private PngColorReducer() {
+    }
+
+    /**
+     * Rewrites the passed in PNG in place with fewer bits per pixel if that
+     * can be done without changing any pixel. The color of 100% transparent
+     * pixels is kept.
+     *
+     * @param file The PNG to reduce.
+     * @return <code>true</code> if the file was rewritten.
+     * @throws IOException Thrown if the file can not be read or written.
+     * @see #reduce(File, TransparentPixels)
+     */
+    public static boolean reduce(final File file) throws IOException {
+        return reduce(file, TransparentPixels.NONE);
+    }
+
+    /**
+     * Rewrites the passed in PNG in place with fewer bits per pixel, or with
+     * the color of its 100% transparent pixels normalized, if that can be done
+     * without changing how any pixel looks.
+     *
+     * @param file The PNG to reduce.
+     * @param transparentPixels How the color of 100% transparent pixels is
+     *                          rewritten.
+     * @return <code>true</code> if the file was rewritten.
+     * @throws IOException Thrown if the file can not be read or written.
+     */
+    public static boolean reduce(final File file, final TransparentPixels transparentPixels) throws IOException {
+        final BufferedImage image;
+        final int bitsPerPixel;
+        try (final ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                return false;
+            }
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                final IIOMetadata metadata = reader.getImageMetadata(0);
+                if ((metadata == null) || !Arrays.asList(metadata.getMetadataFormatNames()).contains(PNG_METADATA_FORMAT)) {
+                    return false;
+                }
+                bitsPerPixel = getReducibleBitsPerPixel(metadata.getAsTree(PNG_METADATA_FORMAT));
+                if ((bitsPerPixel <= 1) || (((long) reader.getWidth(0) * reader.getHeight(0)) > MAX_SIZE_IN_PIXELS)) {
+                    return false;
+                }
+                image = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        if (!hasEightBitSamples(image)) {
+            logger.debug("{} uses all 16 bits of its samples.", file);
+            return false;
+        }
+
+        final BufferedImage reduced = createReducedImage(image, bitsPerPixel, transparentPixels);
+        if (reduced == null) {
+            return false;
+        }
+        // Never trade pixels for bytes.
+        if (!PixelComparator.equals(image, reduced)) {
+            logger.debug("The reduced version of {} has different pixels.", file);
+            return false;
+        }
+
+        final File tmp = new File(file.getPath() + ".reduced");
+        try {
+            write(reduced, tmp);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        logger.debug("Rewrote {} with {} bits per pixel, it had {}.", file, Integer.valueOf(reduced.getColorModel().getPixelSize()), Integer.valueOf(bitsPerPixel));
+        return true;
+    }
+
+    /**
+     * @param root The root of the {@value #PNG_METADATA_FORMAT} metadata.
+     * @return The bits per pixel of the image or <code>-1</code> if it can not
+     *         be reduced.
+     */
+    private static int getReducibleBitsPerPixel(final Node root) {
+        int bitsPerPixel = -1;
+        boolean rgb = false;
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            final String name = node.getNodeName();
+            if ("IHDR".equals(name)) {
+                final int bitDepth = Integer.parseInt(node.getAttributes().getNamedItem("bitDepth").getNodeValue());
+                final String colorType = node.getAttributes().getNamedItem("colorType").getNodeValue();
+                if ("RGB".equals(colorType)) {
+                    rgb = true;
+                    bitsPerPixel = 3 * bitDepth;
+                } else if ("RGBAlpha".equals(colorType)) {
+                    bitsPerPixel = 4 * bitDepth;
+                } else if ("Palette".equals(colorType)) {
+                    bitsPerPixel = bitDepth;
+                } else {
+                    return -1;
+                }
+            } else if (COLOR_CHUNKS.contains(name)) {
+                return -1;
+            } else if ("tRNS".equals(name) && rgb) {
+                // A single transparent color that not every ImageIO version
+                // applies.
+                return -1;
+            } else if ("UnknownChunks".equals(name)) {
+                for (Node chunk = node.getFirstChild(); chunk != null; chunk = chunk.getNextSibling()) {
+                    if ("acTL".equals(chunk.getAttributes().getNamedItem("type").getNodeValue())) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return bitsPerPixel;
+    }
+
+    /**
+     * @return <code>false</code> if a 16 bit sample can not be stored in 8
+     *         bits without losing information.
+     */
+    private static boolean hasEightBitSamples(final BufferedImage image) {
+        final Raster raster = image.getRaster();
+        if (raster.getSampleModel().getSampleSize(0) <= 8) {
+            return true;
+        }
+        final int width = raster.getWidth();
+        int[] samples = null;
+        for (int y = 0, height = raster.getHeight(); y < height; y++) {
+            samples = raster.getPixels(raster.getMinX(), raster.getMinY() + y, width, 1, samples);
+            for (final int sample : samples) {
+                if ((sample % 257) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param image The original image.
+     * @param bitsPerPixel The bits per pixel of the original image.
+     * @param transparentPixels How the color of 100% transparent pixels is
+     *                          rewritten.
+     * @return The image with the fewest bits per pixel or <code>null</code> if
+     *         it does not have fewer bits per pixel than the original and
+     *         none of its transparent pixels are rewritten.
+     */
+    private static BufferedImage createReducedImage(final BufferedImage image, final int bitsPerPixel, final TransparentPixels transparentPixels) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        // 100% transparent pixels are normalized to 0 since their color does
+        // not matter.
+        final Set<Integer> colors = new HashSet<>();
+        boolean opaque = true;
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (final int pixel : row) {
+                final int alpha = pixel >>> 24;
+                opaque &= (alpha == 0xFF);
+                if (colors.size() <= 256) {
+                    colors.add(Integer.valueOf((alpha == 0) ? 0 : pixel));
+                }
+            }
+        }
+
+        if (colors.size() <= 256) {
+            final int paletteBits = (colors.size() <= 2) ? 1 : (colors.size() <= 4) ? 2 : (colors.size() <= 16) ? 4 : 8;
+            if (paletteBits < bitsPerPixel) {
+                return createPaletteImage(image, colors, paletteBits);
+            }
+        }
+        if (opaque && (24 < bitsPerPixel)) {
+            final BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                rgb.setRGB(0, y, width, 1, row, 0, width);
+            }
+            return rgb;
+        }
+        if ((32 < bitsPerPixel) || ((32 == bitsPerPixel) && (transparentPixels != TransparentPixels.NONE))) {
+            return createArgbImage(image, transparentPixels, 32 < bitsPerPixel);
+        }
+        return null;
+    }
+
+    /**
+     * @param image The original image.
+     * @param transparentPixels How the color of 100% transparent pixels is
+     *                          rewritten.
+     * @param reduced <code>true</code> if the image has fewer bits per pixel
+     *                than the original.
+     * @return The 8 bit ARGB image or <code>null</code> if it is not reduced
+     *         and none of its pixels were rewritten.
+     */
+    private static BufferedImage createArgbImage(final BufferedImage image, final TransparentPixels transparentPixels, final boolean reduced) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        boolean changed = reduced;
+        int[] row = new int[width];
+        int[] previousRow = null;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            if (transparentPixels != TransparentPixels.NONE) {
+                for (int x = 0; x < width; x++) {
+                    final int pixel = row[x];
+                    if ((pixel >>> 24) == 0) {
+                        final int color;
+                        if (transparentPixels == TransparentPixels.ZERO) {
+                            color = 0;
+                        } else if (x > 0) {
+                            // Already rewritten.
+                            color = row[x - 1] & 0xFFFFFF;
+                        } else {
+                            color = (previousRow == null) ? 0 : (previousRow[0] & 0xFFFFFF);
+                        }
+                        if (pixel != color) {
+                            row[x] = color;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            argb.setRGB(0, y, width, 1, row, 0, width);
+            if (previousRow == null) {
+                previousRow = new int[width];
+            }
+            final int[] swap = previousRow;
+            previousRow = row;
+            row = swap;
+        }
+        return changed ? argb : null;
+    }
+
+    private static BufferedImage createPaletteImage(final BufferedImage image, final Set<Integer> colors, final int paletteBits) {
+        final int[] palette = colors.stream()
+                .sorted(Comparator.<Integer>comparingInt(color -> color.intValue() >>> 24).thenComparingInt(PngColorReducer::getLuma))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final byte[] reds = new byte[palette.length];
+        final byte[] greens = new byte[palette.length];
+        final byte[] blues = new byte[palette.length];
+        final byte[] alphas = new byte[palette.length];
+        final Map<Integer, Integer> indexByColor = new HashMap<>();
+        for (int i = 0; i < palette.length; i++) {
+            indexByColor.put(Integer.valueOf(palette[i]), Integer.valueOf(i));
+            reds[i] = (byte) (palette[i] >>> 16);
+            greens[i] = (byte) (palette[i] >>> 8);
+            blues[i] = (byte) palette[i];
+            alphas[i] = (byte) (palette[i] >>> 24);
+        }
+        final IndexColorModel colorModel = new IndexColorModel(paletteBits, palette.length, reds, greens, blues, alphas);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final BufferedImage indexed = new BufferedImage(width, height, (paletteBits < 8) ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+
+        final WritableRaster raster = indexed.getRaster();
+        final int[] row = new int[width];
+        final int[] indexes = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                indexes[x] = indexByColor.get(Integer.valueOf(((row[x] >>> 24) == 0) ? 0 : row[x])).intValue();
+            }
+            raster.setSamples(0, y, width, 1, 0, indexes);
+        }
+        return indexed;
+    }
+
+    private static int getLuma(final Integer color) {
+        final int pixel = color.intValue();
+        return (299 * ((pixel >>> 16) & 0xFF)) + (587 * ((pixel >>> 8) & 0xFF)) + (114 * (pixel & 0xFF));
+    }
+
+    private static void write(final BufferedImage image, final File file) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (final ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(new IIOImage(image, null, null));
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Perceptual comparison of two images using the structural similarity index
+ * (SSIM) of their luma. Unlike {@link ImageUtils#visuallyCompare(File, File)}
+ * small differences that are hard to see, e.g. from a lossy encoder, still
+ * score close to <code>1</code>, so the index can gate lossy optimizations.</p>
+ * <p>The index is the mean over {@value #WINDOW_SIZE}x{@value #WINDOW_SIZE}
+ * windows that overlap by half. Large images are split into bands of windows
+ * that are scored in parallel on the common {@link ForkJoinPool}. When either
+ * image has an alpha channel, the pixels are composited on black and on white
+ * and the lower of both indexes is used, so the color of a 100% transparent
+ * pixel does not matter but a change of its transparency does. Because a mean
+ * hides local differences, {@link #isSimilar(BufferedImage, BufferedImage)}
+ * also limits the index of the worst window and the change of the mean chroma
+ * of every window. This class is threadsafe.</p>
+ *
+ * @since 2.0.2
+ */
+public final class SsimComparator {
+
+    private final static Logger logger = LoggerFactory.getLogger(SsimComparator.class);
+
+    /**
+     * The default minimum index for two images to be considered similar.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.99;
+
+    /**
+     * The width and height of the windows.
+     */
+    static final int WINDOW_SIZE = 8;
+
+    /**
+     * The distance between two windows.
+     */
+    private static final int STRIDE = WINDOW_SIZE / 2;
+
+    /**
+     * Stabilize the division for windows with a mean or variance close to 0.
+     */
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    /**
+     * How many times the difference the threshold allows for the whole image
+     * a single window may have.
+     */
+    static final int WINDOW_THRESHOLD_FACTOR = 10;
+
+    /**
+     * The chroma shift of a window allowed at a threshold of
+     * <code>1 - 1 / {@value #WINDOW_THRESHOLD_FACTOR}</code> or lower.
+     */
+    static final double MAX_CHROMA_SHIFT = 32;
+
+    /**
+     * Bands with fewer pixels than this are not split any further.
+     */
+    private static final int MIN_PARALLEL_SIZE = 256 * 1024;
+
+    private volatile double threshold;
+
+    /**
+     * Uses the {@link #DEFAULT_THRESHOLD}.
+     */
+    public SsimComparator() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold The minimum index for two images to be considered
+     *                  similar.
+     * @see #setThreshold(double)
+     */
+    public SsimComparator(final double threshold) {
+        setThreshold(threshold);
+    }
+
+    /**
+     * @return The minimum index for two images to be considered similar.
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the minimum index for two images to be considered similar. A lower
+     * threshold allows smaller files with more visible differences.
+     *
+     * @param threshold A value between 0 and 1 (inclusive). 1 only accepts
+     *                  images with the same luma.
+     */
+    public void setThreshold(final double threshold) {
+        if (!(threshold >= 0) || (threshold > 1)) {
+            throw new IllegalArgumentException("The passed in threshold, " + threshold + ", needs to be between 0 and 1.");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Checks if both images are similar enough.
+     *
+     * @param file1 The original image.
+     * @param file2 The image to compare with the original.
+     * @param decodedImages The cache of the current task or <code>null</code>.
+     * @return <code>true</code> if the index of both images is at least the
+     *         threshold.
+     * @throws IOException Thrown if either image can not be read.
+     */
+    public boolean isSimilar(final File file1, final File file2, final DecodedImageCache decodedImages) throws IOException {
+        final BufferedImage image1 = ImageUtils.read(file1, decodedImages);
+        final BufferedImage image2 = ImageUtils.read(file2, decodedImages);
+        if ((image1 == null) || (image2 == null)) {
+            throw new IOException("ImageIO is unable to read " + ((image1 == null) ? file1 : file2).getPath());
+        }
+        return isSimilar(image1, image2);
+    }
+
+    /**
+     * Checks if both images are similar enough. Besides the index, which is a
+     * mean, the worst window has to be close to the threshold and no window may
+     * shift its color, so neither a small local artifact nor a change of hue
+     * that keeps the luma is averaged away.
+     *
+     * @param image1 The original image.
+     * @param image2 The image to compare with the original.
+     * @return <code>true</code> if the index of both images is at least the
+     *         threshold, the index of every window is at least
+     *         {@link #getWindowThreshold()} and the mean chroma of every window
+     *         changed by at most {@link #getMaxChromaShift()}.
+     */
+    public boolean isSimilar(final BufferedImage image1, final BufferedImage image2) {
+        final Score score = score(image1, image2);
+        if (score == null) {
+            return false;
+        }
+        final double ssim = score.getIndex();
+        logger.debug("The SSIM of the images is {}, the lowest of a window is {} and the largest chroma shift of a window is {}.",
+                Double.valueOf(ssim), Double.valueOf(score.worstWindow), Double.valueOf(score.chromaShift));
+        return (ssim >= threshold) && (score.worstWindow >= getWindowThreshold()) && (score.chromaShift <= getMaxChromaShift());
+    }
+
+    /**
+     * @return The minimum index of every single window, which allows
+     *         {@value #WINDOW_THRESHOLD_FACTOR} times the difference the
+     *         threshold allows for the whole image.
+     */
+    public double getWindowThreshold() {
+        return Math.max(0, 1 - (WINDOW_THRESHOLD_FACTOR * (1 - threshold)));
+    }
+
+    /**
+     * @return The maximum change of the mean blue-difference or red-difference
+     *         chroma (0 - 255) of a window, which is the difference the
+     *         threshold allows scaled to {@value #MAX_CHROMA_SHIFT} levels.
+     */
+    public double getMaxChromaShift() {
+        return MAX_CHROMA_SHIFT * Math.min(1, WINDOW_THRESHOLD_FACTOR * (1 - threshold));
+    }
+
+    /**
+     * Calculates the structural similarity index of both images.
+     *
+     * @param image1 The original image.
+     * @param image2 The image to compare with the original.
+     * @return A value between -1 and 1, where 1 means the luma is the same. 0
+     *         if the dimensions are different.
+     */
+    public static double ssim(final BufferedImage image1, final BufferedImage image2) {
+        final Score score = score(image1, image2);
+        return (score == null) ? 0 : score.getIndex();
+    }
+
+    /**
+     * @param image1 The original image.
+     * @param image2 The image to compare with the original.
+     * @return The score of every window or <code>null</code> if the dimensions
+     *         are different.
+     */
+    private static Score score(final BufferedImage image1, final BufferedImage image2) {
+        final int width = image1.getWidth();
+        final int height = image1.getHeight();
+        if ((width != image2.getWidth()) || (height != image2.getHeight())) {
+            logger.debug("The image dimensions are different.");
+            return null;
+        }
+
+        final boolean alpha = image1.getColorModel().hasAlpha() || image2.getColorModel().hasAlpha();
+        final int[] xs = getWindowPositions(width);
+        final int[] ys = getWindowPositions(height);
+        final Score score = ForkJoinPool.commonPool().invoke(new BandScore(image1, image2, alpha, xs, ys, 0, ys.length));
+        score.windows = (double) xs.length * ys.length;
+        return score;
+    }
+
+    /**
+     * @param length The width or height of the image.
+     * @return The start of every window along that side. The last window ends
+     *         at the edge of the image.
+     */
+    private static int[] getWindowPositions(final int length) {
+        final int size = Math.min(WINDOW_SIZE, length);
+        final int last = length - size;
+        final int count = (last / STRIDE) + (((last % STRIDE) == 0) ? 1 : 2);
+        final int[] positions = new int[count];
+        for (int i = 0; i < (count - 1); i++) {
+            positions[i] = i * STRIDE;
+        }
+        positions[count - 1] = last;
+        return positions;
+    }
+
+    /**
+     * The scores of a range of windows.
+     */
+    private static final class Score {
+
+        /**
+         * The sum of the luma index of every window composited on black,
+         * followed by the sum composited on white if the images have an alpha
+         * channel.
+         */
+        final double[] sums;
+
+        /**
+         * The lowest luma index of a single window.
+         */
+        double worstWindow = 1;
+
+        /**
+         * The largest change of the mean chroma of a single window.
+         */
+        double chromaShift;
+
+        /**
+         * The number of windows of the whole image.
+         */
+        double windows;
+
+        Score(final int planes) {
+            sums = new double[planes];
+        }
+
+        void add(final Score other) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.sums[i];
+            }
+            worstWindow = Math.min(worstWindow, other.worstWindow);
+            chromaShift = Math.max(chromaShift, other.chromaShift);
+        }
+
+        /**
+         * @return The mean luma index, the lower one of both backgrounds if the
+         *         images have an alpha channel.
+         */
+        double getIndex() {
+            return ((sums.length > 1) ? Math.min(sums[0], sums[1]) : sums[0]) / windows;
+        }
+    }
+
+    /**
+     * Scores a range of rows of windows, splitting it in half while it is
+     * large.
+     */
+    private static final class BandScore extends RecursiveTask<Score> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient BufferedImage image1;
+        private final transient BufferedImage image2;
+        private final boolean alpha;
+        private final int[] xs;
+        private final int[] ys;
+        private final int fromWindowRow;
+        private final int toWindowRow;
+
+        BandScore(final BufferedImage image1, final BufferedImage image2, final boolean alpha, final int[] xs, final int[] ys, final int fromWindowRow, final int toWindowRow) {
+            this.image1 = image1;
+            this.image2 = image2;
+            this.alpha = alpha;
+            this.xs = xs;
+            this.ys = ys;
+            this.fromWindowRow = fromWindowRow;
+            this.toWindowRow = toWindowRow;
+        }
+
+        @Override
+        protected Score compute() {
+            final int width = image1.getWidth();
+            final int windowRows = toWindowRow - fromWindowRow;
+            if ((windowRows > 1) && (((long) windowRows * STRIDE * width) > MIN_PARALLEL_SIZE)) {
+                final int middle = fromWindowRow + (windowRows / 2);
+                final BandScore top = new BandScore(image1, image2, alpha, xs, ys, fromWindowRow, middle);
+                top.fork();
+                final Score bottom = new BandScore(image1, image2, alpha, xs, ys, middle, toWindowRow).compute();
+                final Score score = top.join();
+                score.add(bottom);
+                return score;
+            }
+
+            final int windowHeight = Math.min(WINDOW_SIZE, image1.getHeight());
+            final int windowWidth = Math.min(WINDOW_SIZE, width);
+            final int fromRow = ys[fromWindowRow];
+            final int rows = (ys[toWindowRow - 1] + windowHeight) - fromRow;
+
+            final int[] argb1 = image1.getRGB(0, fromRow, width, rows, null, 0, width);
+            final int[] argb2 = image2.getRGB(0, fromRow, width, rows, null, 0, width);
+            final Score score = new Score(alpha ? 2 : 1);
+            for (int plane = 0; plane < score.sums.length; plane++) {
+                final float background = (plane == 0) ? 0 : 255;
+                final float[][] ycc1 = toYCbCr(argb1, background);
+                final float[][] ycc2 = toYCbCr(argb2, background);
+                for (int wy = fromWindowRow; wy < toWindowRow; wy++) {
+                    final int top = ys[wy] - fromRow;
+                    for (final int x : xs) {
+                        final double index = score(ycc1[0], ycc2[0], width, x, top, windowWidth, windowHeight);
+                        score.sums[plane] += index;
+                        score.worstWindow = Math.min(score.worstWindow, index);
+                        for (int chroma = 1; chroma < 3; chroma++) {
+                            score.chromaShift = Math.max(score.chromaShift,
+                                    Math.abs(mean(ycc1[chroma], width, x, top, windowWidth, windowHeight) - mean(ycc2[chroma], width, x, top, windowWidth, windowHeight)));
+                        }
+                    }
+                }
+            }
+            return score;
+        }
+
+        /**
+         * Converts the pixels to Rec. 601 luma and chroma composited on the
+         * passed in background.
+         *
+         * @return The luma, the blue-difference and the red-difference chroma.
+         */
+        private static float[][] toYCbCr(final int[] argb, final float background) {
+            final float[][] ycc = new float[3][argb.length];
+            for (int i = 0; i < argb.length; i++) {
+                final int pixel = argb[i];
+                final float a = (pixel >>> 24) / 255f;
+                final float r = (a * ((pixel >>> 16) & 0xFF)) + ((1 - a) * background);
+                final float g = (a * ((pixel >>> 8) & 0xFF)) + ((1 - a) * background);
+                final float b = (a * (pixel & 0xFF)) + ((1 - a) * background);
+                ycc[0][i] = (0.299f * r) + (0.587f * g) + (0.114f * b);
+                ycc[1][i] = (-0.168736f * r) - (0.331264f * g) + (0.5f * b);
+                ycc[2][i] = (0.5f * r) - (0.418688f * g) - (0.081312f * b);
+            }
+            return ycc;
+        }
+
+        private static double mean(final float[] values, final int width, final int left, final int top, final int windowWidth, final int windowHeight) {
+            double sum = 0;
+            for (int y = top, bottom = top + windowHeight; y < bottom; y++) {
+                for (int i = (y * width) + left, end = i + windowWidth; i < end; i++) {
+                    sum += values[i];
+                }
+            }
+            return sum / ((double) windowWidth * windowHeight);
+        }
+
+        private static double score(final float[] luma1, final float[] luma2, final int width, final int left, final int top, final int windowWidth, final int windowHeight) {
+            double sum1 = 0;
+            double sum2 = 0;
+            double squares1 = 0;
+            double squares2 = 0;
+            double products = 0;
+            for (int y = top, bottom = top + windowHeight; y < bottom; y++) {
+                for (int i = (y * width) + left, end = i + windowWidth; i < end; i++) {
+                    final double value1 = luma1[i];
+                    final double value2 = luma2[i];
+                    sum1 += value1;
+                    sum2 += value2;
+                    squares1 += value1 * value1;
+                    squares2 += value2 * value2;
+                    products += value1 * value2;
+                }
+            }
+            final double n = (double) windowWidth * windowHeight;
+            final double mean1 = sum1 / n;
+            final double mean2 = sum2 / n;
+            final double variance1 = (squares1 / n) - (mean1 * mean1);
+            final double variance2 = (squares2 / n) - (mean2 * mean2);
+            final double covariance = (products / n) - (mean1 * mean2);
+            return (((2 * mean1 * mean2) + C1) * ((2 * covariance) + C2))
+                    / (((mean1 * mean1) + (mean2 * mean2) + C1) * (variance1 + variance2 + C2));
+        }
+    }
+}
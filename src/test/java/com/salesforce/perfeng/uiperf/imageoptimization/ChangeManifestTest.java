@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for {@link ChangeManifest}.
+ */
+public class ChangeManifestTest {
+
+    /**
+     * Test that an image is only reported as unchanged while its content is
+     * the same as when it was recorded and that the manifest survives a round
+     * trip through the file system.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testIsUnchanged() throws IOException {
+        final File tmpDir = Files.createTempDirectory(ChangeManifestTest.class.getName()).toFile();
+        try {
+            final File manifestFile = new File(tmpDir, "manifest.tsv");
+            final File image = new File(tmpDir, "image.png");
+            FileUtils.writeStringToFile(image, "image", StandardCharsets.UTF_8);
+
+            ChangeManifest manifest = ChangeManifest.load(manifestFile);
+            assertThat(manifest.isUnchanged(image), equalTo(FALSE));
+            assertThat(manifest.getOutcome(image), nullValue());
+
+            manifest.record(image, ChangeManifest.Outcome.NO_SAVINGS);
+            manifest.write();
+
+            manifest = ChangeManifest.load(manifestFile);
+            assertThat(manifest.isUnchanged(image), equalTo(TRUE));
+            assertThat(manifest.getOutcome(image), equalTo(ChangeManifest.Outcome.NO_SAVINGS));
+
+            // Same content with a new modified time, like after a fresh checkout.
+            image.setLastModified(image.lastModified() - 10_000);
+            assertThat(manifest.isUnchanged(image), equalTo(TRUE));
+
+            // Same size, different content.
+            FileUtils.writeStringToFile(image, "IMAGE", StandardCharsets.UTF_8);
+            image.setLastModified(image.lastModified() - 20_000);
+            assertThat(manifest.isUnchanged(image), equalTo(FALSE));
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+
+/**
+ * Test class for {@link GitChangeScanner}.
+ */
+public class GitChangeScannerTest {
+
+    /**
+     * Test that revisions that git would read as an option are rejected.
+     */
+    @Test
+    public void testInvalidRevisions() {
+        for (final String revisions : new String[] {null, "", "-p", "--output=/tmp/x..HEAD", "HEAD..--output=/tmp/x", "..HEAD", "HEAD..", "HEAD...main"}) {
+            assertThrows(IllegalArgumentException.class, () -> new GitChangeScanner(revisions), revisions);
+        }
+    }
+
+    /**
+     * Test that only the changed images under the directory are reported,
+     * both against the working tree and between two commits.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Thrown if git was interrupted.
+     * @throws ThirdPartyBinaryNotFoundException Thrown if git can not be run.
+     */
+    @Test
+    public void testGetChangedImages() throws IOException, InterruptedException, ThirdPartyBinaryNotFoundException {
+        assumeTrue(isGitInstalled(), GitChangeScanner.GIT_BINARY + " is not installed.");
+
+        final File tmpDir = Files.createTempDirectory(GitChangeScannerTest.class.getName()).toFile().getCanonicalFile();
+        try {
+            final File unchanged = new File(tmpDir, "unchanged.png");
+            final File modified = new File(tmpDir, "images/modified.gif");
+            FileUtils.writeStringToFile(unchanged, "unchanged", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(modified, "modified", StandardCharsets.UTF_8);
+            git(tmpDir, "init", "-q");
+            git(tmpDir, "add", ".");
+            git(tmpDir, "commit", "-q", "-m", "first");
+
+            final File added = new File(tmpDir, "images/added.jpg");
+            FileUtils.writeStringToFile(modified, "modified again", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(added, "added", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(tmpDir, "images/notes.txt"), "not an image", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(tmpDir, "outside.png"), "outside", StandardCharsets.UTF_8);
+
+            final File images = new File(tmpDir, "images");
+            assertThat(new ArrayList<>(new GitChangeScanner("HEAD").getChangedImages(images)), equalTo(List.of(added, modified)));
+
+            git(tmpDir, "add", ".");
+            git(tmpDir, "commit", "-q", "-m", "second");
+            assertThat(new ArrayList<>(new GitChangeScanner("HEAD").getChangedImages(tmpDir)), equalTo(List.of()));
+            assertThat(new ArrayList<>(new GitChangeScanner("HEAD~1..HEAD").getChangedImages(tmpDir)),
+                    equalTo(List.of(added, modified, new File(tmpDir, "outside.png"))));
+            assertThat(new ArrayList<>(new GitChangeScanner("HEAD~1..HEAD").getChangedImages(images)), equalTo(List.of(added, modified)));
+
+            assertThrows(IOException.class, () -> new GitChangeScanner("does-not-exist").getChangedImages(tmpDir));
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    private static boolean isGitInstalled() throws InterruptedException {
+        try {
+            return new ProcessBuilder(GitChangeScanner.GIT_BINARY, "--version").redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (final IOException ioe) {
+            return false;
+        }
+    }
+
+    private static void git(final File workingDirectory, final String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>(Arrays.asList(GitChangeScanner.GIT_BINARY, "-c", "user.name=test", "-c", "user.email=test@example.com", "-c", "commit.gpgsign=false"));
+        command.addAll(Arrays.asList(args));
+        final Process ps = new ProcessBuilder(command).directory(workingDirectory).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        assertThat(command.toString(), Integer.valueOf(ps.waitFor()), equalTo(Integer.valueOf(0)));
+    }
+}
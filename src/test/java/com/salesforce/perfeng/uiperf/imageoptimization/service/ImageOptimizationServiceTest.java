@@ -29,6 +29,8 @@ package com.salesforce.perfeng.uiperf.imageoptimization.service;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
@@ -38,36 +40,54 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.matchesRegex;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.io.FileMatchers.aFileWithSize;
 import static org.hamcrest.io.FileMatchers.anExistingFile;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.imageio.ImageIO;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.hamcrest.io.FileMatchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageVariants;
 import com.salesforce.perfeng.uiperf.imageoptimization.dto.OptimizationResult;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.VerificationPolicy;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService.FileTypeConversion;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.FixedFileUtils;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageUtils;
 import com.salesforce.perfeng.uiperf.imageoptimization.utils.ProcessUtil;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.SsimComparator;
 
 /**
  * Test for {@link ImageOptimizationService}.
@@ -220,17 +240,28 @@ public class ImageOptimizationServiceTest {
         return tmpDir;
     }
 
+    /**
+     * @return The number of images that are converted to WebP, which is every
+     *         image but the JPEGs. Animated GIFs become animated WebPs.
+     */
     private static final int getNumberOfWebPCompatibleImages(final ImageOptimizationTestDto[] imageOptimizationTestDtoList) {
         int count = 0;
 
         for (final ImageOptimizationTestDto imageOptimizationTestDto : imageOptimizationTestDtoList) {
-            if (!imageOptimizationTestDto.isAnimatedGif() && !imageOptimizationTestDto.isJPEG()) {
+            if (!imageOptimizationTestDto.isJPEG()) {
                 count++;
             }
         }
         return count;
     }
 
+    /**
+     * @return <code>true</code> if the WebP has an ANIM chunk.
+     */
+    private static final boolean isAnimatedWebP(final File webpFile) throws IOException {
+        return new String(Files.readAllBytes(webpFile.toPath()), StandardCharsets.ISO_8859_1).contains("ANIM");
+    }
+
     private static final int getNumberOfOptimizedImages(final ImageOptimizationTestDto[] imageOptimizationTestDtoList) {
         int count = 0;
 
@@ -312,9 +343,14 @@ public class ImageOptimizationServiceTest {
 
         //WebP Check
         for (final ImageOptimizationTestDto imageOptimizationTestDto : imageOptimizationTestDtoList) {
-            if (imageOptimizationTestDto.isJPEG() || imageOptimizationTestDto.isAnimatedGif()) {
+            if (imageOptimizationTestDto.isJPEG()) {
                 //JPEG is not converted to WEBP
                 assertThat(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), nullValue());
+            } else if (imageOptimizationTestDto.isAnimatedGif()) {
+                //An animated GIF is converted to an animated WEBP
+                final OptimizationResult<Object> result = treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID);
+                validateFileOptimization(result, imageOptimizationTestDto, true);
+                assertThat(Boolean.valueOf(isAnimatedWebP(result.getOptimizedFile())), equalTo(Boolean.TRUE));
             } else {
                 validateFileOptimization(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), imageOptimizationTestDto, true);
             }
@@ -407,9 +443,14 @@ public class ImageOptimizationServiceTest {
 
         //WebP Check
         for (final ImageOptimizationTestDto imageOptimizationTestDto : imageOptimizationTestDtoList) {
-            if (imageOptimizationTestDto.isJPEG() || imageOptimizationTestDto.isAnimatedGif()) {
+            if (imageOptimizationTestDto.isJPEG()) {
                 //JPEG is not converted to WEBP
                 assertThat(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), nullValue());
+            } else if (imageOptimizationTestDto.isAnimatedGif()) {
+                //An animated GIF is converted to an animated WEBP
+                final OptimizationResult<Object> result = treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID);
+                validateFileOptimization(result, imageOptimizationTestDto, true);
+                assertThat(Boolean.valueOf(isAnimatedWebP(result.getOptimizedFile())), equalTo(Boolean.TRUE));
             } else {
                 validateFileOptimization(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), imageOptimizationTestDto, true);
             }
@@ -502,9 +543,14 @@ public class ImageOptimizationServiceTest {
 
         //WebP Check
         for (final ImageOptimizationTestDto imageOptimizationTestDto : imageOptimizationTestDtoList) {
-            if (imageOptimizationTestDto.isJPEG() || imageOptimizationTestDto.isAnimatedGif()) {
+            if (imageOptimizationTestDto.isJPEG()) {
                 //JPEG is not converted to WEBP
                 assertThat(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), nullValue());
+            } else if (imageOptimizationTestDto.isAnimatedGif()) {
+                //An animated GIF is converted to an animated WEBP
+                final OptimizationResult<Object> result = treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID);
+                validateFileOptimization(result, imageOptimizationTestDto, true);
+                assertThat(Boolean.valueOf(isAnimatedWebP(result.getOptimizedFile())), equalTo(Boolean.TRUE));
             } else {
                 validateFileOptimization(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), imageOptimizationTestDto, true);
             }
@@ -652,9 +698,14 @@ public class ImageOptimizationServiceTest {
 
         //WebP Check
         for (final ImageOptimizationTestDto imageOptimizationTestDto : imageOptimizationTestDtoList) {
-            if (imageOptimizationTestDto.isJPEG() || imageOptimizationTestDto.isAnimatedGif()) {
+            if (imageOptimizationTestDto.isJPEG()) {
                 //JPEG is not converted to WEBP
                 assertThat(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), nullValue());
+            } else if (imageOptimizationTestDto.isAnimatedGif()) {
+                //An animated GIF is converted to an animated WEBP
+                final OptimizationResult<Object> result = treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID);
+                validateFileOptimization(result, imageOptimizationTestDto, true);
+                assertThat(Boolean.valueOf(isAnimatedWebP(result.getOptimizedFile())), equalTo(Boolean.TRUE));
             } else {
                 validateFileOptimization(treasureMap.get(imageOptimizationTestDto.getMasterFile().getName() + WEBP_ID), imageOptimizationTestDto, true);
             }
@@ -727,6 +778,55 @@ public class ImageOptimizationServiceTest {
         assertThat(optimizedFile, aFileWithSize(lessThan(Long.valueOf(workingFileSize))));
     }
 
+    /**
+     * Test for {@link ImageOptimizationService#executeLossyPngquant(File, File, SsimComparator, com.salesforce.perfeng.uiperf.imageoptimization.utils.DecodedImageCache)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Thrown if the optimization was interrupted.
+     */
+    @Test
+    public void testExecuteLossyPngquant() throws IOException, InterruptedException {
+        final File masterFile = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png");
+        final File workingDirectory = getTempDir().getCanonicalFile();
+        final File workingFile = new File(workingDirectory, "csv_120.png");
+        FixedFileUtils.copyFile(masterFile, workingFile);
+        final long workingFileSize = workingFile.length();
+
+        // Every candidate is similar enough.
+        final int quality = imageOptimizationService.executeLossyPngquant(masterFile, workingFile, new SsimComparator(0), null);
+        assertThat(Integer.valueOf(quality), greaterThan(Integer.valueOf(0)));
+        assertThat(Long.valueOf(workingFile.length()), lessThan(Long.valueOf(workingFileSize)));
+        assertThat(new SsimComparator(0.5).isSimilar(masterFile, workingFile, null), equalTo(Boolean.TRUE));
+
+        // The candidates are deleted.
+        assertThat(List.of(workingDirectory.list()), equalTo(List.of(workingFile.getName())));
+
+        // A photo loses too much at the lower floors for a real threshold.
+        final File photoDirectory = getTempDir().getCanonicalFile();
+        final File photo = new File(photoDirectory, "sergey.png");
+        ImageIO.write(ImageIO.read(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg")), "png", photo);
+        final File photoWorkingFile = new File(getTempDir().getCanonicalFile(), photo.getName());
+        FixedFileUtils.copyFile(photo, photoWorkingFile);
+        final SsimComparator comparator = new SsimComparator(0.95);
+
+        // The smallest candidate the comparator accepts, found floor by floor.
+        int expectedQuality = -1;
+        long expectedSize = photo.length();
+        for (final int floor : ImageOptimizationService.LOSSY_PNG_QUALITY_FLOORS) {
+            final File candidate = new File(photoDirectory, "q" + floor + ".png");
+            final Process ps = new ProcessBuilder(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.PNGQUANT_BINARY).getPath(), "--quality=" + floor + '-' + Math.min(100, floor + 10), "-s1", "--force", "--output", candidate.getPath(), "--", photo.getPath())
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if ((ps.waitFor() == 0) && (candidate.length() > 0) && (candidate.length() < expectedSize) && comparator.isSimilar(photo, candidate, null)) {
+                expectedQuality = floor;
+                expectedSize = candidate.length();
+            }
+        }
+        assertThat(Integer.valueOf(expectedQuality), greaterThan(Integer.valueOf(ImageOptimizationService.LOSSY_PNG_QUALITY_FLOORS[ImageOptimizationService.LOSSY_PNG_QUALITY_FLOORS.length - 1])));
+
+        assertThat(Integer.valueOf(imageOptimizationService.executeLossyPngquant(photo, photoWorkingFile, comparator, null)), equalTo(Integer.valueOf(expectedQuality)));
+        assertThat(Long.valueOf(photoWorkingFile.length()), equalTo(Long.valueOf(expectedSize)));
+    }
+
     /**
      * Test method for
      * {@link ImageOptimizationService#executePngquant(File, String)}
@@ -889,6 +989,91 @@ public class ImageOptimizationServiceTest {
         testExecuteCWebpHelper(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/sprite arrow enlarge max min shrink x blue.gif.png"));
     }
 
+    /**
+     * Test method for
+     * {@link ImageOptimizationService#executeAvifenc(File, String, int, int, boolean)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Can be thrown by the optimization service
+     *                              when optimizing the files.
+     */
+    @Test
+    public void testExecuteAvifenc() throws IOException, InterruptedException {
+        // Lossy AVIFs can not be verified, so they are opt in.
+        assertThat(Boolean.valueOf(imageOptimizationService.isAvifLossless()), equalTo(Boolean.TRUE));
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setAvifSpeed(11));
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setAvifQuality(-1));
+
+        assumeTrue(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.AVIFENC_BINARY).canExecute(), "avifenc is not installed.");
+
+        for (final String fileName : new String[] {"owner_key_icon.png", "sharing_model2.jpg"}) {
+            final File fileToConvert = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/" + fileName);
+            for (final boolean lossless : new boolean[] {true, false}) {
+                final File workingFile = new File(getTempDir().getCanonicalFile() + File.separator + fileName);
+                FixedFileUtils.copyFile(fileToConvert, workingFile);
+
+                final File optimizedFile = imageOptimizationService.executeAvifenc(workingFile, workingFile.getCanonicalPath(), 6, 60, lossless);
+                assertThat(optimizedFile, anExistingFile());
+                assertThat(optimizedFile, aFileWithSize(greaterThan(Long.valueOf(0))));
+                assertThat(optimizedFile, FileMatchers.aFileNamed(endsWith(IImageOptimizationService.AVIF_EXTENSION)));
+                if (!lossless) {
+                    assertThat(optimizedFile, aFileWithSize(lessThan(Long.valueOf(fileToConvert.length()))));
+                }
+                // The input is left alone.
+                assertThat(workingFile, aFileWithSize(equalTo(Long.valueOf(fileToConvert.length()))));
+            }
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ImageOptimizationService#executeCjxl(File, String)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Can be thrown by the optimization service
+     *                              when optimizing the files.
+     */
+    @Test
+    public void testExecuteCjxl() throws IOException, InterruptedException {
+        assumeTrue(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.CJXL_BINARY).canExecute(), "cjxl is not installed.");
+
+        final File fileToConvert = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/sharing_model2.jpg");
+        final File workingFile = new File(getTempDir().getCanonicalFile() + File.separator + fileToConvert.getName());
+        FixedFileUtils.copyFile(fileToConvert, workingFile);
+
+        // Lossless JPEG recompression is smaller than the JPEG.
+        final File optimizedFile = imageOptimizationService.executeCjxl(workingFile, workingFile.getCanonicalPath());
+        assertThat(optimizedFile, anExistingFile());
+        assertThat(optimizedFile, aFileWithSize(lessThan(Long.valueOf(fileToConvert.length()))));
+        assertThat(optimizedFile, FileMatchers.aFileNamed(endsWith(IImageOptimizationService.JXL_EXTENSION)));
+    }
+
+    /**
+     * Test method for
+     * {@link ImageOptimizationService#executeDjxl(File, String)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Can be thrown by the optimization service
+     *                              when optimizing the files.
+     */
+    @Test
+    public void testExecuteDjxl() throws IOException, InterruptedException {
+        assumeTrue(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.CJXL_BINARY).canExecute(), "cjxl is not installed.");
+        assumeTrue(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.DJXL_BINARY).canExecute(), "djxl is not installed.");
+
+        final File fileToConvert = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/sharing_model2.jpg");
+        final File workingFile = new File(getTempDir().getCanonicalFile() + File.separator + fileToConvert.getName());
+        FixedFileUtils.copyFile(fileToConvert, workingFile);
+
+        final File jxlFile = imageOptimizationService.executeCjxl(workingFile, workingFile.getCanonicalPath());
+        final File reconstructedFile = imageOptimizationService.executeDjxl(jxlFile, jxlFile.getCanonicalPath());
+        assertThat(reconstructedFile, anExistingFile());
+        assertThat(reconstructedFile, FileMatchers.aFileNamed(endsWith(IImageOptimizationService.JPEG_EXTENSION)));
+
+        // The round trip gives back the original JPEG byte for byte.
+        assertThat(Boolean.valueOf(FileUtils.contentEquals(fileToConvert, reconstructedFile)), equalTo(Boolean.TRUE));
+    }
+
     private final void testExecuteGif2WebHelper(final File fileToConvert) throws IOException, InterruptedException {
 
         final File workingFile = new File(getTempDir().getCanonicalFile() + File.separator + fileToConvert.getName());
@@ -919,6 +1104,33 @@ public class ImageOptimizationServiceTest {
         testExecuteGif2WebHelper(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/s arrow bo.gif"));
     }
 
+    /**
+     * Test method for
+     * {@link ImageOptimizationService#executeGif2Webp(File, String, ImageOptimizationService.AnimatedWebPCompression, int)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Can be thrown by the optimization service
+     *                              when optimizing the files.
+     */
+    @Test
+    public void testExecuteGif2WebAnimated() throws IOException, InterruptedException {
+        final File fileToConvert = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/loading.gif");
+
+        for (final ImageOptimizationService.AnimatedWebPCompression compression : ImageOptimizationService.AnimatedWebPCompression.values()) {
+            final File workingFile = new File(getTempDir().getCanonicalFile() + File.separator + fileToConvert.getName());
+            FixedFileUtils.copyFile(fileToConvert, workingFile);
+
+            final File optimizedFile = imageOptimizationService.executeGif2Webp(workingFile, workingFile.getCanonicalPath(), compression, 75);
+            assertThat(optimizedFile, anExistingFile());
+            assertThat(optimizedFile, aFileWithSize(greaterThan(Long.valueOf(0))));
+            assertThat(optimizedFile, FileMatchers.aFileNamed(endsWith(IImageOptimizationService.WEBP_EXTENSION)));
+            assertThat(Boolean.valueOf(isAnimatedWebP(optimizedFile)), equalTo(Boolean.TRUE));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setAnimatedWebPQuality(101));
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setAnimatedWebPCompression(null));
+    }
+
     /**
      * Test method for
      * {@link ImageOptimizationService#executeOptipng(File, String)}.
@@ -1092,6 +1304,309 @@ public class ImageOptimizationServiceTest {
         assertThat(optimizedFile, aFileWithSize(lessThan(Long.valueOf(workingFileSize))));
     }
 
+    /**
+     * Test for
+     * {@link ImageOptimizationService#optimizeAllImagesAndWriteManifest(FileTypeConversion, boolean, Collection)}.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws TimeoutException Thrown if it takes to long to optimize an image.
+     */
+    @Test
+    public void testOptimizeAllImagesAndWriteManifest() throws IOException, TimeoutException {
+        final File tmpDir = getTempDir();
+        final List<ImageVariants<Object>> imageVariants = new ImageOptimizationService<>(tmpDir, new File(DEFAULT_BINARY_APP_LOCATION)).optimizeAllImagesAndWriteManifest(FileTypeConversion.ALL, true,
+                List.of(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png"),
+                        new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/el_icon.gif")));
+
+        assertThat(imageVariants, hasSize(2));
+        for (final ImageVariants<Object> variants : imageVariants) {
+            assertThat(variants.getVariants(), hasSize(2));
+            assertThat(Long.valueOf(variants.getVariants().get(0).getOptimizedFileSize()), lessThan(Long.valueOf(variants.getVariants().get(1).getOptimizedFileSize() + 1)));
+            assertThat(variants.getSmallestVariant(true), equalTo(variants.getVariants().get(0)));
+            assertThat(Boolean.valueOf(variants.getSmallestVariant(false).isBrowserSpecific()), equalTo(Boolean.FALSE));
+        }
+
+        final File manifest = new File(tmpDir.getCanonicalPath() + File.separator + "final" + File.separator + IImageOptimizationService.VARIANT_MANIFEST_FILE_NAME);
+        assertThat(manifest, anExistingFile());
+        final String json = FileUtils.readFileToString(manifest, StandardCharsets.UTF_8);
+        assertThat(json, containsString(IImageOptimizationService.WEBP_MIME_TYPE));
+        assertThat(json, containsString(IImageOptimizationService.PNG_MIME_TYPE));
+    }
+
+    /**
+     * Test that
+     * {@link ImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection, Collection)}
+     * only reports the images that could not be made any smaller.
+     *
+     * @throws IOException Can be thrown when interacting with files.
+     * @throws TimeoutException Thrown if it takes to long to optimize an
+     *                          image.
+     */
+    @Test
+    public void testOptimizeAllImagesReportsNoSavings() throws IOException, TimeoutException {
+        final File optimized = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png");
+        final File alreadyOptimal = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/doctype_16_sprite.png");
+
+        final Set<File> noSavings = new HashSet<>();
+        final List<OptimizationResult<Object>> results = imageOptimizationService.optimizeAllImages(FileTypeConversion.NONE, false, List.of(optimized, alreadyOptimal), noSavings);
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).getOriginalFile(), equalTo(optimized.getCanonicalFile()));
+        assertThat(noSavings, equalTo(Set.of(alreadyOptimal)));
+    }
+
+    /**
+     * Test that an image whose content does not match its file extension is
+     * skipped without failing the rest of the batch.
+     *
+     * @throws IOException Can be thrown when interacting with files.
+     * @throws TimeoutException Thrown if it takes to long to optimize an
+     *                          image.
+     */
+    @Test
+    public void testOptimizeAllImagesSkipsMislabeledImage() throws IOException, TimeoutException {
+        final File mislabeled = new File(getTempDir(), "png_content.gif");
+        FileUtils.copyFile(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png"), mislabeled);
+
+        final Set<File> noSavings = new HashSet<>();
+        assertThat(imageOptimizationService.optimizeAllImages(FileTypeConversion.NONE, false, List.of(mislabeled), noSavings), empty());
+        assertThat(noSavings, empty());
+    }
+
+    /**
+     * Test that identical images are grouped by
+     * {@link ImageOptimizationService#findDuplicateImages(Collection)} and that
+     * {@link ImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection)}
+     * returns a result for every copy.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws TimeoutException Thrown if the optimization times out.
+     */
+    @Test
+    public void testOptimizeAllImagesWithDuplicates() throws IOException, TimeoutException {
+        final File original = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png");
+        final File copy1 = new File(getTempDir(), "copy1.png");
+        final File copy2 = new File(getTempDir(), "copy2.png");
+        FileUtils.copyFile(original, copy1);
+        FileUtils.copyFile(original, copy2);
+        final File other = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/el_icon.gif");
+
+        final List<List<File>> duplicates = imageOptimizationService.findDuplicateImages(List.of(original, other, copy1, copy2));
+        assertThat(duplicates, hasSize(1));
+        assertThat(duplicates.get(0), equalTo(List.of(original.getCanonicalFile(), copy1.getCanonicalFile(), copy2.getCanonicalFile())));
+
+        final List<OptimizationResult<Object>> results = imageOptimizationService.optimizeAllImages(FileTypeConversion.NONE, false, List.of(original, copy1, copy2));
+        assertThat(results, hasSize(3));
+        for (final OptimizationResult<Object> result : results) {
+            assertThat(result.getOptimizedFile(), anExistingFile());
+            assertThat(Long.valueOf(result.getOptimizedFileSize()), equalTo(Long.valueOf(results.get(0).getOptimizedFileSize())));
+            assertThat(Long.valueOf(FileUtils.checksumCRC32(result.getOptimizedFile())), equalTo(Long.valueOf(FileUtils.checksumCRC32(results.get(0).getOptimizedFile()))));
+        }
+    }
+
+    /**
+     * Test that the {@link VerificationPolicy} is recorded on the results and
+     * decides if the optimized images are checked.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws TimeoutException Thrown if the optimization times out.
+     */
+    @Test
+    public void testOptimizeAllImagesWithVerificationPolicy() throws IOException, TimeoutException {
+        final List<File> images = List.of(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/sharing_model2.jpg"));
+
+        // jpegtran and jfifremove are lossless, so LOSSY_STAGES_ONLY skips
+        // the check.
+        final Map<VerificationPolicy, Boolean> expectedVerified = Map.of(VerificationPolicy.ALWAYS, Boolean.TRUE, VerificationPolicy.LOSSY_STAGES_ONLY, Boolean.FALSE, VerificationPolicy.NONE, Boolean.FALSE);
+        for (final Map.Entry<VerificationPolicy, Boolean> expected : expectedVerified.entrySet()) {
+            // Each run needs its own final results directory.
+            final ImageOptimizationService<Object> service = new ImageOptimizationService<>(Files.createTempDirectory(ImageOptimizationServiceTest.class.getName()).toFile(), new File(DEFAULT_BINARY_APP_LOCATION));
+            try {
+                service.setVerificationPolicy(expected.getKey());
+                final List<OptimizationResult<Object>> results = service.optimizeAllImages(FileTypeConversion.NONE, false, images);
+                assertThat(results, hasSize(1));
+                assertThat(results.get(0).getVerificationPolicy(), equalTo(expected.getKey()));
+                assertThat(Boolean.valueOf(results.get(0).isVerified()), equalTo(expected.getValue()));
+                assertThat(Boolean.valueOf(results.get(0).isFailedAutomatedTest()), equalTo(Boolean.FALSE));
+            } finally {
+                service.destroy();
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setVerificationSampleRate(1.5));
+        assertThrows(IllegalArgumentException.class, () -> imageOptimizationService.setVerificationPolicy(null));
+    }
+
+    /**
+     * Test that concurrent calls to
+     * {@link ImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection, Collection)}
+     * for the same image share one optimization. The first run is blocked in
+     * its cache lookup until the second call is waiting for it, so the stage
+     * is only run once and both calls get the same result, or both report the
+     * image as having no savings.
+     *
+     * @throws Exception Can be thrown when interacting with various files or
+     *                   by one of the concurrent calls.
+     */
+    @Test
+    public void testOptimizeAllImagesConcurrently() throws Exception {
+        // The service runs one optimization per CPU at a time.
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1, "Only one CPU is available.");
+
+        final File image = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png");
+        final File optimized = new File(getTempDir(), image.getName());
+        FileUtils.copyFile(image, optimized);
+
+        List<Collection<File>> noSavings = optimizeConcurrently(image, new OptimizationCache.Entry(optimized, false, false, true, false, -1, false));
+        assertThat(noSavings.get(0), empty());
+        assertThat(noSavings.get(1), empty());
+
+        imageOptimizationService = new ImageOptimizationService<>(getTempDir(), new File(DEFAULT_BINARY_APP_LOCATION));
+        noSavings = optimizeConcurrently(image, new OptimizationCache.Entry(null, false, false, false, false, -1, false));
+        assertThat(noSavings.get(0), contains(image.getCanonicalFile()));
+        assertThat(noSavings.get(1), contains(image.getCanonicalFile()));
+    }
+
+    /**
+     * Calls {@link ImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection, Collection)}
+     * for the same image twice at the same time. The first call blocks in the
+     * lookup of the {@link OptimizationCache} until the second is waiting for
+     * it, and then finds the passed in entry.
+     *
+     * @param image The image to optimize.
+     * @param entry The entry the cache lookup returns.
+     * @return The images each call reported as having no savings.
+     * @throws Exception Can be thrown when interacting with various files or
+     *                   by one of the concurrent calls.
+     */
+    private List<Collection<File>> optimizeConcurrently(final File image, final OptimizationCache.Entry entry) throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        imageOptimizationService.setOptimizationCache(new OptimizationCache(getTempDir(), FileUtils.ONE_GB) {
+            @Override
+            Entry get(final String key) {
+                lookups.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return entry;
+            }
+        });
+
+        final List<Collection<File>> noSavings = List.of(new ArrayList<>(), new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<OptimizationResult<Object>>> first = executor.submit(() -> imageOptimizationService.optimizeAllImages(FileTypeConversion.NONE, false, List.of(image), noSavings.get(0)));
+            assertThat(Boolean.valueOf(started.await(30, TimeUnit.SECONDS)), equalTo(Boolean.TRUE));
+            final Future<List<OptimizationResult<Object>>> second = executor.submit(() -> imageOptimizationService.optimizeAllImages(FileTypeConversion.NONE, false, List.of(image), noSavings.get(1)));
+            final long deadline = System.currentTimeMillis() + 30000;
+            while (!isWaitingForInFlightOptimization()) {
+                assertThat("The second call did not wait for the first.", Long.valueOf(System.currentTimeMillis()), lessThan(Long.valueOf(deadline)));
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            final List<OptimizationResult<Object>> firstResults = first.get();
+            final List<OptimizationResult<Object>> secondResults = second.get();
+            assertThat(Integer.valueOf(lookups.get()), equalTo(Integer.valueOf(1)));
+            if (!entry.isNoSavings()) {
+                assertThat(firstResults, hasSize(1));
+                assertThat(secondResults, hasSize(1));
+                assertThat(secondResults.get(0), sameInstance(firstResults.get(0)));
+            } else {
+                assertThat(firstResults, empty());
+                assertThat(secondResults, empty());
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        return noSavings;
+    }
+
+    /**
+     * @return <code>true</code> if a thread is waiting for the result of an
+     *         optimization that another thread is running.
+     */
+    private static boolean isWaitingForInFlightOptimization() {
+        for (final Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            if (thread.getKey().getState() == Thread.State.WAITING) {
+                for (final StackTraceElement element : thread.getValue()) {
+                    if (element.getClassName().endsWith("$SingleFlightOptimization") && "getResult".equals(element.getMethodName())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Test that a second run with the same {@link OptimizationCache} returns
+     * the same results from the cache.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws TimeoutException Thrown if the optimization times out.
+     */
+    @Test
+    public void testOptimizeAllImagesWithOptimizationCache() throws IOException, TimeoutException {
+        final OptimizationCache cache = new OptimizationCache(getTempDir(), FileUtils.ONE_GB);
+        final List<File> images = List.of(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/csv_120.png"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/el_icon.gif"));
+
+        final ImageOptimizationService<Object> firstService = new ImageOptimizationService<>(getTempDir(), new File(DEFAULT_BINARY_APP_LOCATION));
+        firstService.setOptimizationCache(cache);
+        final List<OptimizationResult<Object>> firstResults = firstService.optimizeAllImages(FileTypeConversion.ALL, true, images);
+
+        final ImageOptimizationService<Object> secondService = new ImageOptimizationService<>(getTempDir(), new File(DEFAULT_BINARY_APP_LOCATION));
+        secondService.setOptimizationCache(cache);
+        final List<OptimizationResult<Object>> secondResults = secondService.optimizeAllImages(FileTypeConversion.ALL, true, images);
+
+        assertThat(secondResults, hasSize(firstResults.size()));
+        final Map<String, OptimizationResult<Object>> firstByName = firstResults.stream().collect(Collectors.toMap(r -> r.getOptimizedFile().getName(), Function.identity()));
+        for (final OptimizationResult<Object> result : secondResults) {
+            final OptimizationResult<Object> expected = firstByName.get(result.getOptimizedFile().getName());
+            assertThat(expected, notNullValue());
+            assertThat(Long.valueOf(result.getOptimizedFileSize()), equalTo(Long.valueOf(expected.getOptimizedFileSize())));
+            assertThat(Boolean.valueOf(result.isFileTypeChanged()), equalTo(Boolean.valueOf(expected.isFileTypeChanged())));
+            assertThat(Boolean.valueOf(result.isBrowserSpecific()), equalTo(Boolean.valueOf(expected.isBrowserSpecific())));
+            assertThat(Long.valueOf(FileUtils.checksumCRC32(result.getOptimizedFile())), equalTo(Long.valueOf(FileUtils.checksumCRC32(expected.getOptimizedFile()))));
+        }
+    }
+
+    /**
+     * Test that {@link ImageOptimizationService#optimizeAllImages(FileTypeConversion, boolean, Collection)}
+     * minifies SVG images with the svgo engines. Skipped when node is not
+     * installed.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws TimeoutException Thrown if the optimization times out.
+     */
+    @Test
+    public void testOptimizeAllImagesSvg() throws IOException, TimeoutException {
+        assumeTrue(new File(DEFAULT_BINARY_APP_LOCATION, ImageOptimizationService.NODE_BINARY).canExecute(), "node is not installed.");
+
+        final File tmpDir = getTempDir();
+        final File svg = new File(getTempDir(), "icon.svg");
+        FileUtils.writeStringToFile(svg, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- Generator: test -->\n<svg xmlns=\"http://www.w3.org/2000/svg\"   width=\"16\"   height=\"16\">\n    <g>\n        <rect x=\"0\" y=\"0\" width=\"16\" height=\"16\" fill=\"#ff0000\"/>\n    </g>\n</svg>\n", StandardCharsets.UTF_8);
+
+        final ImageOptimizationService<Object> service = new ImageOptimizationService<>(tmpDir, new File(DEFAULT_BINARY_APP_LOCATION));
+        try {
+            final List<OptimizationResult<Object>> results = service.optimizeAllImages(FileTypeConversion.ALL, true, List.of(svg));
+            assertThat(results, hasSize(1));
+            final OptimizationResult<Object> result = results.get(0);
+            assertThat(Long.valueOf(result.getOptimizedFileSize()), lessThan(Long.valueOf(svg.length())));
+            assertThat(Boolean.valueOf(result.isFileTypeChanged()), equalTo(Boolean.FALSE));
+            assertThat(Boolean.valueOf(result.isFailedAutomatedTest()), equalTo(Boolean.FALSE));
+            assertThat(FileUtils.readFileToString(result.getOptimizedFile(), StandardCharsets.UTF_8), containsString("<svg"));
+        } finally {
+            service.destroy();
+        }
+    }
+
     /**
      * Test for {@link ImageOptimizationService#getFinalResultsDirectory()}.
      *
@@ -1104,6 +1619,29 @@ public class ImageOptimizationServiceTest {
         assertThat(new ImageOptimizationService<>(tmpDir, new File(DEFAULT_BINARY_APP_LOCATION)).getFinalResultsDirectory(), equalTo(tmpDir.getCanonicalPath() + File.separator + "final"));
     }
 
+    /**
+     * Test that {@link OptimizationResult#isFailedAutomatedTest()} waits for
+     * the automated validation and treats a validation that could not finish
+     * as failed, while {@link OptimizationResult#equals(Object)} and
+     * {@link OptimizationResult#hashCode()} do not wait for it.
+     */
+    @Test
+    public void testOptimizationResultWithPendingValidation() {
+        final File file = new File("image.png");
+        final CompletableFuture<Boolean> validation = new CompletableFuture<>();
+        final OptimizationResult<Object> result = new OptimizationResult<>(file, 1, file, 2, false, validation, false);
+        assertThat(result.toString(), containsString("pending"));
+        assertThat(Boolean.valueOf(new HashSet<>(List.of(result)).contains(new OptimizationResult<>(file, 1, file, 2, false, false, false))), equalTo(Boolean.TRUE));
+        assertThat(Boolean.valueOf(validation.isDone()), equalTo(Boolean.FALSE));
+
+        validation.complete(Boolean.FALSE);
+        assertThat(Boolean.valueOf(result.isFailedAutomatedTest()), equalTo(Boolean.FALSE));
+
+        final CompletableFuture<Boolean> failedValidation = new CompletableFuture<>();
+        failedValidation.completeExceptionally(new IllegalStateException());
+        assertThat(Boolean.valueOf(new OptimizationResult<>(file, 1, file, 2, false, failedValidation, false).isFailedAutomatedTest()), equalTo(Boolean.TRUE));
+    }
+
     private static final class ImageOptimizationTestDto {
 
         private final File masterFile;
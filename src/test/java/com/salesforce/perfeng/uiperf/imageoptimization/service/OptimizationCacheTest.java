@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.io.FileMatchers.aFileNamed;
+import static org.hamcrest.io.FileMatchers.anExistingFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for {@link OptimizationCache}. Two instances on the same
+ * directory stand in for two JVMs sharing the cache.
+ *
+ * @since 2.0.2
+ */
+public class OptimizationCacheTest {
+
+    private static final int NUMBER_OF_THREADS = 8;
+
+    /**
+     * Test that replacing an entry with an image of another type, or with no
+     * savings, deletes the previous image.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     */
+    @Test
+    public void testReplaceEntry() throws IOException {
+        final File tmpDir = Files.createTempDirectory(OptimizationCacheTest.class.getName()).toFile();
+        try {
+            final OptimizationCache cache = new OptimizationCache(new File(tmpDir, "cache"), FileUtils.ONE_GB);
+            final String key = OptimizationCache.getKeyForHash("contentHash", "configuration");
+            final File png = new File(tmpDir, "image.png");
+            final File webp = new File(tmpDir, "image.webp");
+            FileUtils.writeStringToFile(png, "png", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(webp, "webp", StandardCharsets.UTF_8);
+
+            cache.put(key, png, false, false, true, false, -1, false);
+            final File cachedPng = cache.get(key).getFile();
+            assertThat(cachedPng, aFileNamed(endsWith(IImageOptimizationService.PNG_EXTENSION)));
+
+            cache.put(key, webp, true, false, false, false, -1, true);
+            final File cachedWebp = cache.get(key).getFile();
+            assertThat(cachedWebp, aFileNamed(endsWith(IImageOptimizationService.WEBP_EXTENSION)));
+            assertThat(Boolean.valueOf(cachedPng.exists()), equalTo(Boolean.FALSE));
+
+            // The same type keeps the file.
+            cache.put(key, webp, true, false, false, false, -1, true);
+            assertThat(cachedWebp, anExistingFile());
+
+            cache.putNoSavings(key);
+            assertThat(Boolean.valueOf(cache.get(key).isNoSavings()), equalTo(Boolean.TRUE));
+            assertThat(Boolean.valueOf(cachedWebp.exists()), equalTo(Boolean.FALSE));
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    /**
+     * Test that threads using two instances on the same directory compute an
+     * entry only once when they take the lock of its key, and that entries
+     * put at the same time without the lock are always complete.
+     *
+     * @throws Exception Can be thrown when interacting with various files or
+     *                   by one of the threads.
+     */
+    @Test
+    public void testConcurrentPublishers() throws Exception {
+        final File tmpDir = Files.createTempDirectory(OptimizationCacheTest.class.getName()).toFile();
+        final ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        try {
+            final OptimizationCache[] caches = {new OptimizationCache(new File(tmpDir, "cache"), FileUtils.ONE_GB), new OptimizationCache(new File(tmpDir, "cache"), FileUtils.ONE_GB)};
+            final String key = OptimizationCache.getKeyForHash("contentHash", "configuration");
+            final AtomicInteger computations = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+
+            final List<Callable<String>> tasks = new ArrayList<>(NUMBER_OF_THREADS);
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                final OptimizationCache cache = caches[i % caches.length];
+                final File optimized = new File(tmpDir, "optimized" + i + ".png");
+                tasks.add(() -> {
+                    start.await();
+                    OptimizationCache.Entry entry = cache.get(key);
+                    if (entry == null) {
+                        try (final OptimizationCache.KeyLock lock = cache.lock(key)) {
+                            entry = cache.get(key);
+                            if (entry == null) {
+                                computations.incrementAndGet();
+                                FileUtils.writeStringToFile(optimized, "optimized by " + optimized.getName(), StandardCharsets.UTF_8);
+                                cache.put(key, optimized, false, false, true, false, -1, false);
+                                entry = cache.get(key);
+                            }
+                        }
+                    }
+                    return FileUtils.readFileToString(entry.getFile(), StandardCharsets.UTF_8);
+                });
+            }
+            final List<Future<String>> futures = new ArrayList<>(NUMBER_OF_THREADS);
+            for (final Callable<String> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            final String first = futures.get(0).get();
+            for (final Future<String> future : futures) {
+                assertThat(future.get(), equalTo(first));
+            }
+            assertThat(Integer.valueOf(computations.get()), equalTo(Integer.valueOf(1)));
+
+            // Without the lock the last put wins, but a reader never sees a
+            // partially written image.
+            final String otherKey = OptimizationCache.getKeyForHash("otherContentHash", "configuration");
+            final List<String> contents = Collections.synchronizedList(new ArrayList<>());
+            final List<Future<Void>> puts = new ArrayList<>(NUMBER_OF_THREADS);
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                final OptimizationCache cache = caches[i % caches.length];
+                final File optimized = new File(tmpDir, "other" + i + ".png");
+                final String content = ("image " + i + '\n').repeat(1000);
+                contents.add(content);
+                FileUtils.writeStringToFile(optimized, content, StandardCharsets.UTF_8);
+                puts.add(executor.submit(() -> {
+                    for (int j = 0; j < 20; j++) {
+                        cache.put(otherKey, optimized, false, false, true, false, -1, false);
+                        final OptimizationCache.Entry entry = cache.get(otherKey);
+                        assertThat(entry, notNullValue());
+                        assertThat(Boolean.valueOf(contents.contains(readCompleteFile(entry.getFile()))), equalTo(Boolean.TRUE));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> put : puts) {
+                put.get();
+            }
+            assertThat(getTmpFiles(caches[0].getDirectory()), empty());
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    /**
+     * Test that a reader using one instance never gets a partial image while
+     * another instance on the same directory evicts entries, and that the
+     * cache stays below its maximum size.
+     *
+     * @throws Exception Can be thrown when interacting with various files or
+     *                   by one of the threads.
+     */
+    @Test
+    public void testEvictionDuringRead() throws Exception {
+        final long maxSizeInBytes = 20 * FileUtils.ONE_KB;
+        final int numberOfEntries = 200;
+        final File tmpDir = Files.createTempDirectory(OptimizationCacheTest.class.getName()).toFile();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final OptimizationCache reader = new OptimizationCache(new File(tmpDir, "cache"), maxSizeInBytes);
+            final OptimizationCache writer = new OptimizationCache(new File(tmpDir, "cache"), maxSizeInBytes);
+            final AtomicInteger written = new AtomicInteger();
+            final AtomicBoolean done = new AtomicBoolean();
+
+            final Future<Integer> reads = executor.submit(() -> {
+                int misses = 0;
+                boolean last;
+                do {
+                    last = done.get();
+                    for (int i = 0; i < written.get(); i++) {
+                        final OptimizationCache.Entry entry = reader.get(getKey(i));
+                        if (entry == null) {
+                            misses++;
+                            continue;
+                        }
+                        final String content = readCompleteFile(entry.getFile());
+                        // Evicted after it was looked up.
+                        if (content != null) {
+                            assertThat(content, equalTo(getContent(i)));
+                        }
+                    }
+                } while (!last);
+                return Integer.valueOf(misses);
+            });
+
+            try {
+                for (int i = 0; i < numberOfEntries; i++) {
+                    final File optimized = new File(tmpDir, i + ".png");
+                    FileUtils.writeStringToFile(optimized, getContent(i), StandardCharsets.UTF_8);
+                    writer.put(getKey(i), optimized, false, false, true, false, -1, false);
+                    written.incrementAndGet();
+                }
+            } finally {
+                done.set(true);
+            }
+            assertThat(reads.get(), not(equalTo(Integer.valueOf(0))));
+            assertThat(Long.valueOf(getSize(writer.getDirectory())), lessThan(Long.valueOf(maxSizeInBytes)));
+            assertThat(writer.get(getKey(numberOfEntries - 1)), notNullValue());
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    /**
+     * Test that the temp files left behind by a crashed JVM do not hide or
+     * break the entries of the same key, and that the eviction of the next
+     * instance removes them once they are stale.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     */
+    @Test
+    public void testStaleTmpFileRecovery() throws IOException {
+        final File tmpDir = Files.createTempDirectory(OptimizationCacheTest.class.getName()).toFile();
+        try {
+            final File cacheDirectory = new File(tmpDir, "cache");
+            final String key = OptimizationCache.getKeyForHash("contentHash", "configuration");
+            final File optimized = new File(tmpDir, "optimized.png");
+            FileUtils.writeStringToFile(optimized, "optimized", StandardCharsets.UTF_8);
+            new OptimizationCache(cacheDirectory, FileUtils.ONE_MB).put(key, optimized, false, false, true, false, -1, false);
+
+            // What a JVM that crashed while publishing the image and the
+            // metadata of the key leaves behind.
+            final File fanOutDirectory = new File(cacheDirectory, key.substring(0, 2));
+            final File staleImage = new File(fanOutDirectory, key + ".png1234.tmp");
+            final File staleMetadata = new File(fanOutDirectory, key + ".properties5678.tmp");
+            final File inProgress = new File(fanOutDirectory, key + ".png9012.tmp");
+            FileUtils.writeStringToFile(staleImage, "optim", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(staleMetadata, "extension=", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(inProgress, "opt", StandardCharsets.UTF_8);
+            final long twoHoursAgo = System.currentTimeMillis() - (2L * 60L * 60L * 1000L);
+            assertThat(Boolean.valueOf(staleImage.setLastModified(twoHoursAgo)), equalTo(Boolean.TRUE));
+            assertThat(Boolean.valueOf(staleMetadata.setLastModified(twoHoursAgo)), equalTo(Boolean.TRUE));
+
+            final OptimizationCache cache = new OptimizationCache(cacheDirectory, FileUtils.ONE_MB);
+            assertThat(FileUtils.readFileToString(cache.get(key).getFile(), StandardCharsets.UTF_8), equalTo("optimized"));
+            FileUtils.writeStringToFile(optimized, "optimized again", StandardCharsets.UTF_8);
+            cache.put(key, optimized, false, false, true, false, -1, false);
+            assertThat(FileUtils.readFileToString(cache.get(key).getFile(), StandardCharsets.UTF_8), equalTo("optimized again"));
+
+            // Adding more than a tenth of the maximum size measures the
+            // directory again, which removes the stale temp files.
+            final File large = new File(tmpDir, "large.png");
+            FileUtils.writeByteArrayToFile(large, new byte[(int) (FileUtils.ONE_MB / 5)]);
+            cache.put(OptimizationCache.getKeyForHash("largeContentHash", "configuration"), large, false, false, true, false, -1, false);
+            assertThat(Boolean.valueOf(staleImage.exists()), equalTo(Boolean.FALSE));
+            assertThat(Boolean.valueOf(staleMetadata.exists()), equalTo(Boolean.FALSE));
+            assertThat(inProgress, anExistingFile());
+            assertThat(FileUtils.readFileToString(cache.get(key).getFile(), StandardCharsets.UTF_8), equalTo("optimized again"));
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    private static String getKey(final int i) {
+        return OptimizationCache.getKeyForHash("contentHash" + i, "configuration");
+    }
+
+    private static String getContent(final int i) {
+        return ("image " + i + '\n').repeat(100);
+    }
+
+    /**
+     * @return The content of the file or <code>null</code> if it was deleted.
+     */
+    private static String readCompleteFile(final File file) throws IOException {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The size of the entries in the cache directory.
+     */
+    private static long getSize(final File directory) throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory.toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile).filter(file -> !file.getName().endsWith(".lock")).mapToLong(File::length).sum();
+        }
+    }
+
+    private static List<File> getTmpFiles(final File directory) throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory.toPath())) {
+            return paths.map(Path::toFile).filter(file -> file.getName().endsWith(".tmp")).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2026, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of Salesforce.com nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.perfeng.uiperf.imageoptimization.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.ImageFileOptimizationException;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.ProcessUtil;
+
+/**
+ * Test class for {@link SvgoEnginePool}. The engines run a stand in for the
+ * svgo module that loads a dependency from the node_modules directory, writes
+ * stray output, and fails and hangs on request. Skipped when node is not
+ * installed.
+ */
+public class SvgoEnginePoolTest {
+
+    private static final String FAKE_SVGO = String.join("\n",
+            "var minify = require('fake-svgo-dependency');",
+            "function SVGO() {}",
+            "SVGO.prototype.optimize = function (data, callback) {",
+            "  console.log('stray output');",
+            "  console.error('a warning');",
+            "  if (data.indexOf('hang') >= 0) { return; }",
+            "  if (data.indexOf('fail') >= 0) { callback({error: 'bad svg'}); return; }",
+            "  callback({data: minify(data)});",
+            "};",
+            "module.exports = SVGO;",
+            "");
+
+    /**
+     * Test that an engine is only reused after it answered "OK", and that an
+     * engine that fails or does not answer in time is replaced.
+     *
+     * @throws IOException Can be thrown when interacting with various files.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void testOptimize() throws IOException, InterruptedException {
+        final File node = new File(ProcessUtil.getDefaultBinaryAppLocation(), ImageOptimizationService.NODE_BINARY);
+        assumeTrue(node.canExecute(), "node is not installed.");
+
+        final File tmpDir = Files.createTempDirectory(SvgoEnginePoolTest.class.getName()).toFile();
+        final File svgo = new File(tmpDir, "fake-svgo.js");
+        FileUtils.writeStringToFile(svgo, FAKE_SVGO, StandardCharsets.UTF_8);
+        final File nodeModules = new File(tmpDir, "node_modules");
+        FileUtils.writeStringToFile(new File(nodeModules, "fake-svgo-dependency" + File.separator + "index.js"), "module.exports = function (data) { return data.replace(/\\s+/g, ' ').trim(); };\n", StandardCharsets.UTF_8);
+        final SvgoEnginePool pool = new SvgoEnginePool(node.getCanonicalPath(), nodeModules, new File(tmpDir, "engines"), 1, 2, svgo);
+        try {
+            final File input = new File(tmpDir, "input.svg");
+            final File output = new File(tmpDir, "output.svg");
+            FileUtils.writeStringToFile(input, "<svg>\n    <g/>\n</svg>\n", StandardCharsets.UTF_8);
+            assertThat(pool.optimize(input, output), equalTo(output));
+            assertThat(FileUtils.readFileToString(output, StandardCharsets.UTF_8), equalTo("<svg> <g/> </svg>"));
+
+            final File failing = new File(tmpDir, "fail.svg");
+            FileUtils.writeStringToFile(failing, "<svg>fail</svg>", StandardCharsets.UTF_8);
+            assertThat(assertThrows(ImageFileOptimizationException.class, () -> pool.optimize(failing, new File(tmpDir, "fail.min.svg"))).getMessage(), containsString("bad svg"));
+
+            final File hanging = new File(tmpDir, "hang.svg");
+            FileUtils.writeStringToFile(hanging, "<svg>hang</svg>", StandardCharsets.UTF_8);
+            assertThrows(IOException.class, () -> pool.optimize(hanging, new File(tmpDir, "hang.min.svg")));
+
+            // The next request gets its own answer from a new engine.
+            FileUtils.deleteQuietly(output);
+            assertThat(pool.optimize(input, output), equalTo(output));
+            assertThat(FileUtils.readFileToString(output, StandardCharsets.UTF_8), equalTo("<svg> <g/> </svg>"));
+        } finally {
+            pool.close();
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+}
@@ -32,14 +32,20 @@ import static java.lang.Boolean.TRUE;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.io.FileMatchers.aFileWithSize;
 import static org.hamcrest.io.FileMatchers.aReadableFile;
 import static org.hamcrest.io.FileMatchers.aWritableFile;
 import static org.hamcrest.io.FileMatchers.anExistingDirectory;
 import static org.hamcrest.io.FileMatchers.anExistingFile;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -47,14 +53,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLConnection;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
 
 import org.apache.commons.io.FileUtils;
 import org.hamcrest.io.FileMatchers;
 import org.junit.jupiter.api.Test;
 
 import com.salesforce.perfeng.uiperf.ThirdPartyBinaryNotFoundException;
+import com.salesforce.perfeng.uiperf.imageoptimization.dto.ImageDescriptor;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.IImageOptimizationService;
 import com.salesforce.perfeng.uiperf.imageoptimization.service.ImageOptimizationServiceTest;
+import com.salesforce.perfeng.uiperf.imageoptimization.utils.PngColorReducer.TransparentPixels;
 
 /**
  * Test class for {@link ImageUtils}.
@@ -95,11 +107,35 @@ public class ImageUtilsTest {
     }
 
     /**
-     * Test for {@link ImageUtils#containsAlphaTransparency(File)}.
+     * Test that a difference ImageIO finds between two GIFs is confirmed with
+     * the AWT Toolkit when there is no display. Surefire runs the tests with
+     * <code>-Djava.awt.headless=true</code>.
+     *
+     * @throws IOException Thrown if one of the images can not be read.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testVisuallyCompareGifHeadless() throws IOException {
+        assertThat("The tests need to run with -Djava.awt.headless=true.", GraphicsEnvironment.isHeadless(), equalTo(TRUE));
+
+        final File gif1 = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/s-arrow-bo.gif");
+        final File gif2 = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/s-arrow-bo2.gif");
+        // ImageIO decodes them differently, only the Toolkit sees the same
+        // pixels.
+        assertThat(PixelComparator.equals(ImageIO.read(gif1), ImageIO.read(gif2)), equalTo(FALSE));
+        assertThat(ImageUtils.visuallyCompare(gif1, gif2), equalTo(TRUE));
+        assertThat(ImageUtils.visuallyCompare(gif1, gif2, new DecodedImageCache()), equalTo(TRUE));
+    }
+
+    /**
+     * Test for {@link ImageUtils#containsAlphaTransparency(File)} and
+     * {@link ImageUtils#containsAlphaTransparency(File, ImageDescriptor, DecodedImageCache)}.
+     *
+     * @throws IOException Thrown if the header of an image can not be read.
      */
     @SuppressWarnings("boxing")
     @Test
-    public void testContainsAlphaTransparency() {
+    public void testContainsAlphaTransparency() throws IOException {
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg")), equalTo(FALSE));
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_smushit.jpg")), equalTo(FALSE));
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_jpegmini.jpg")), equalTo(FALSE));
@@ -108,6 +144,14 @@ public class ImageUtilsTest {
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/2013_summer_force.gif")), equalTo(TRUE));
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_optimized.png")), equalTo(TRUE));
         assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_unoptimized.png")), equalTo(TRUE));
+
+        // A descriptor that rules out transparency is trusted without reading
+        // the file, otherwise the pixels are checked.
+        final File noTransparency = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/no_transparency.gif");
+        final File transparent = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/2013_summer_force.gif");
+        assertThat(ImageUtils.containsAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/no_transparency.gif.tmp"), ImageProbe.probe(noTransparency), null), equalTo(FALSE));
+        assertThat(ImageUtils.containsAlphaTransparency(transparent, ImageProbe.probe(noTransparency), null), equalTo(FALSE));
+        assertThat(ImageUtils.containsAlphaTransparency(transparent, ImageProbe.probe(transparent), null), equalTo(TRUE));
     }
 
     /**
@@ -194,4 +238,328 @@ public class ImageUtilsTest {
         assertThat(ImageUtils.isAminatedGif(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/el_icon.gif")), equalTo(FALSE));
         assertThat(ImageUtils.isAminatedGif(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/addCol.gif")), equalTo(FALSE));
     }
+
+    /**
+     * Test that the checks in {@link ImageUtils} give the same answers with a
+     * {@link DecodedImageCache} and that the decoded data is reused and
+     * released.
+     *
+     * @throws IOException Thrown if one of the images can not be read.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testDecodedImageCache() throws IOException {
+        final File gif = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/2013_summer_force.gif");
+        final File png = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_optimized.png");
+        final DecodedImageCache decodedImages = new DecodedImageCache();
+
+        assertThat(ImageUtils.isAminatedGif(gif, decodedImages), equalTo(ImageUtils.isAminatedGif(gif)));
+        assertThat(ImageUtils.containsAlphaTransparency(gif, decodedImages), equalTo(TRUE));
+        final long sizeInBytes = decodedImages.getSizeInBytes();
+        assertThat(sizeInBytes, greaterThan(0L));
+
+        // The pixels of the GIF are reused.
+        assertThat(ImageUtils.visuallyCompare(gif, gif.getAbsoluteFile(), decodedImages), equalTo(TRUE));
+        assertThat(decodedImages.getSizeInBytes(), equalTo(sizeInBytes));
+        assertThat(ImageUtils.visuallyCompare(gif, png, decodedImages), equalTo(ImageUtils.visuallyCompare(gif, png)));
+
+        assertThat(ImageUtils.read(png, decodedImages) == ImageUtils.read(png, decodedImages), equalTo(TRUE));
+
+        decodedImages.clear();
+        assertThat(decodedImages.getSizeInBytes(), equalTo(0L));
+
+        // Nothing is kept when the decoded image does not fit.
+        final DecodedImageCache tinyCache = new DecodedImageCache(0);
+        assertThat(ImageUtils.containsAlphaTransparency(png, tinyCache), equalTo(TRUE));
+        assertThat(tinyCache.getSizeInBytes(), equalTo(0L));
+    }
+
+    /**
+     * Test that {@link BandedImageComparator} gives the same answers as the
+     * fully decoded comparison when every image is compared one row at a time.
+     */
+    @Test
+    public void testBandedImageComparator() {
+        final BandedImageComparator comparator = new BandedImageComparator(0, 1);
+
+        assertThat(comparator.compare(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_smushit.jpg")), equalTo(TRUE));
+        assertThat(comparator.compare(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_jpegmini.jpg")), equalTo(FALSE));
+        assertThat(comparator.compare(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png")), equalTo(TRUE));
+
+        // GIFs and images below the threshold are left to the fully decoded comparison.
+        assertThat(comparator.compare(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/no_transparency.gif"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/no_transparency.gif.tmp")), nullValue());
+        assertThat(new BandedImageComparator().compare(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png")), nullValue());
+    }
+
+    /**
+     * Test that {@link PixelComparator#mismatch(int[], int[], int, int)}
+     * ignores the color of pixels that are 100% transparent in both rows.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testPixelComparatorMismatch() {
+        final int[] row1 = {0xff000000, 0x00ffffff, 0x00123456, 0xff00ff00};
+        final int[] row2 = {0xff000000, 0x00000000, 0x00654321, 0xff00ff00};
+        assertThat(PixelComparator.mismatch(row1, row2, 0, row1.length), equalTo(-1));
+
+        row2[2] = 0x01654321;
+        assertThat(PixelComparator.mismatch(row1, row2, 0, row1.length), equalTo(2));
+        assertThat(PixelComparator.mismatch(row1, row2, 3, row1.length), equalTo(-1));
+
+        row2[3] = 0xfe00ff00;
+        assertThat(PixelComparator.mismatch(row1, row2, 3, row1.length), equalTo(3));
+    }
+
+    /**
+     * Test for {@link ImageHeaderUtils#hasAlphaTransparency(File)}.
+     */
+    @Test
+    public void testHasAlphaTransparencyFromHeader() {
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg")), equalTo(FALSE));
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/no_transparency.gif")), equalTo(FALSE));
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png")), equalTo(FALSE));
+
+        // The header is not enough to tell, so the pixels have to be checked.
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/2013_summer_force.gif")), nullValue());
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_optimized.png")), nullValue());
+        assertThat(ImageHeaderUtils.hasAlphaTransparency(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/ChangeManifestTest.java")), nullValue());
+    }
+
+    /**
+     * Test that {@link GifBlockParser} walks the frames of a GIF and rejects
+     * files that are not GIFs.
+     *
+     * @throws IOException Thrown if the GIF can not be read.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testGifBlockParser() throws IOException {
+        try (final InputStream in = new BufferedInputStream(new FileInputStream("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/loading.gif"))) {
+            final GifBlockParser parser = new GifBlockParser(in);
+            int frames = 0;
+            for (GifBlockParser.Block block = parser.next(); block != GifBlockParser.Block.TRAILER; block = parser.next()) {
+                if (block == GifBlockParser.Block.IMAGE) {
+                    assertThat(parser.getFrameCount(), equalTo(++frames));
+                }
+            }
+            assertThat(frames, equalTo(8));
+        }
+
+        assertThrows(IOException.class, () -> {
+            try (final InputStream in = new BufferedInputStream(new FileInputStream("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png"))) {
+                new GifBlockParser(in);
+            }
+        });
+    }
+
+    /**
+     * Test for {@link ImageProbe#probe(File)}.
+     *
+     * @throws IOException Thrown if one of the images can not be read.
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void testImageProbe() throws IOException {
+        ImageDescriptor descriptor = ImageProbe.probe(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png"));
+        assertThat(descriptor.getFormat(), equalTo(IImageOptimizationService.PNG_EXTENSION));
+        assertThat(descriptor.getMimeType(), equalTo(IImageOptimizationService.PNG_MIME_TYPE));
+        assertThat(descriptor.getWidth(), equalTo(450));
+        assertThat(descriptor.getHeight(), equalTo(48));
+        assertThat(descriptor.getColorType(), equalTo(ImageDescriptor.ColorType.PALETTE));
+        assertThat(descriptor.getBitDepth(), equalTo(8));
+        assertThat(descriptor.isAnimated(), equalTo(FALSE));
+        assertThat(descriptor.isAlphaTransparencyPossible(), equalTo(FALSE));
+        // Its tEXt chunks come after the image data, which is not read.
+        assertThat(descriptor.getMetadata(), not(hasItem("tEXt")));
+
+        descriptor = ImageProbe.probe(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/service/loading.gif"));
+        assertThat(descriptor.getFormat(), equalTo(IImageOptimizationService.GIF_EXTENSION));
+        // Only read up to the second of its 8 frames.
+        assertThat(descriptor.getFrameCount(), equalTo(2));
+        assertThat(descriptor.isAnimated(), equalTo(TRUE));
+        assertThat(descriptor.isAlphaTransparencyPossible(), equalTo(TRUE));
+
+        descriptor = ImageProbe.probe(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg"));
+        assertThat(descriptor.getFormat(), equalTo(IImageOptimizationService.JPEG_EXTENSION));
+        assertThat(descriptor.getWidth(), equalTo(128));
+        assertThat(descriptor.getColorType(), equalTo(ImageDescriptor.ColorType.RGB));
+        assertThat(descriptor.isAlphaTransparencyPossible(), equalTo(FALSE));
+
+        final File svg = Files.createTempFile("probe", ".svg").toFile();
+        try {
+            FileUtils.writeStringToFile(svg, "<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\"/>", "UTF-8");
+            assertThat(ImageProbe.probe(svg).getMimeType(), equalTo(IImageOptimizationService.SVG_MIME_TYPE));
+        } finally {
+            FileUtils.deleteQuietly(svg);
+        }
+
+        // The format comes from the content, not the file extension.
+        descriptor = ImageProbe.probe(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/ChangeManifestTest.java"));
+        assertThat(descriptor.getFormat(), nullValue());
+    }
+
+    /**
+     * Test that {@link PixelDigest#digest(File)} is the same for images that
+     * look the same and different for images that do not.
+     *
+     * @throws IOException Thrown if one of the images can not be read.
+     */
+    @Test
+    public void testPixelDigest() throws IOException {
+        final String jpg = PixelDigest.digest(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg"));
+        assertThat(PixelDigest.digest(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_smushit.jpg")), equalTo(jpg));
+        assertThat(PixelDigest.digest(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_jpegmini.jpg")), not(equalTo(jpg)));
+
+        // The same pixels encoded as a GIF and as a PNG.
+        assertThat(PixelDigest.digest(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png")),
+                equalTo(PixelDigest.digest(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.gif"))));
+    }
+
+    /**
+     * Test that {@link ImageUtils#isReadable(File, DecodedImageCache)} finds
+     * corrupted images.
+     *
+     * @throws IOException Can be thrown when interacting with files.
+     */
+    @Test
+    public void testIsReadable() throws IOException {
+        final File gif = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/s-arrow-bo.gif");
+        assertThat(ImageUtils.isReadable(gif, new DecodedImageCache()), equalTo(TRUE));
+
+        final File truncated = Files.createTempFile("truncated", ".gif").toFile();
+        try {
+            Files.write(truncated.toPath(), Arrays.copyOf(Files.readAllBytes(gif.toPath()), 20));
+            assertThat(ImageUtils.isReadable(truncated, new DecodedImageCache()), equalTo(FALSE));
+        } finally {
+            FileUtils.deleteQuietly(truncated);
+        }
+    }
+
+    /**
+     * Test that {@link SsimComparator} accepts small lossy differences only
+     * when they are above its threshold.
+     *
+     * @throws IOException Thrown if one of the images can not be read.
+     */
+    @Test
+    public void testSsimComparator() throws IOException {
+        final File original = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small.jpg");
+        final File lossy = new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_jpegmini.jpg");
+
+        final SsimComparator comparator = new SsimComparator();
+        assertThat(comparator.isSimilar(original, new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/sergey_reasonably_small_smushit.jpg"), null), equalTo(TRUE));
+        assertThat(comparator.isSimilar(original, lossy, null), equalTo(FALSE));
+        assertThat(comparator.isSimilar(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.gif"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/forceapp_bg.png"), null), equalTo(TRUE));
+        assertThat(comparator.isSimilar(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_optimized.png"),
+                new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_unoptimized.png"), null), equalTo(FALSE));
+
+        comparator.setThreshold(0.95);
+        assertThat(comparator.isSimilar(original, lossy, null), equalTo(TRUE));
+
+        // A change of hue that keeps the luma and a small local artifact both
+        // keep the mean index close to 1.
+        comparator.setThreshold(SsimComparator.DEFAULT_THRESHOLD);
+        final BufferedImage gradient = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage hueShifted = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage artifact = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                final int gray = 40 + ((x + y) / 4);
+                gradient.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+                hueShifted.setRGB(x, y, ((gray + 20) << 16) | ((gray - 10) << 8) | (gray + 10));
+                artifact.setRGB(x, y, ((x < 4) && (y < 4)) ? 0xFFFFFF : ((gray << 16) | (gray << 8) | gray));
+            }
+        }
+        assertThat(Double.valueOf(SsimComparator.ssim(gradient, hueShifted)), greaterThan(Double.valueOf(SsimComparator.DEFAULT_THRESHOLD)));
+        assertThat(Boolean.valueOf(comparator.isSimilar(gradient, hueShifted)), equalTo(FALSE));
+        assertThat(Double.valueOf(SsimComparator.ssim(gradient, artifact)), greaterThan(Double.valueOf(SsimComparator.DEFAULT_THRESHOLD)));
+        assertThat(Boolean.valueOf(comparator.isSimilar(gradient, artifact)), equalTo(FALSE));
+        assertThat(Boolean.valueOf(comparator.isSimilar(gradient, gradient)), equalTo(TRUE));
+
+        assertThrows(IllegalArgumentException.class, () -> comparator.setThreshold(1.5));
+    }
+
+    /**
+     * Test that {@link PngColorReducer#reduce(File)} rewrites PNGs with fewer
+     * bits per pixel without changing their pixels.
+     *
+     * @throws IOException Thrown if one of the images can not be read or
+     *                     written.
+     */
+    @Test
+    public void testPngColorReducer() throws IOException {
+        final File tmpDir = Files.createTempDirectory(ImageUtilsTest.class.getName()).toFile();
+        try {
+            // A few colors, including 100% transparent pixels of any color.
+            final BufferedImage fewColors = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < 64; y++) {
+                for (int x = 0; x < 64; x++) {
+                    fewColors.setRGB(x, y, (x < 10) ? ((x * y) << 8) : ((y < 20) ? 0xFF3366CC : 0x80FF0000));
+                }
+            }
+            final File original = new File(tmpDir, "few_colors.png");
+            ImageIO.write(fewColors, "png", original);
+            final File reduced = new File(tmpDir, "few_colors_reduced.png");
+            FileUtils.copyFile(original, reduced);
+
+            assertThat(PngColorReducer.reduce(reduced), equalTo(TRUE));
+            assertThat(Long.valueOf(reduced.length()), lessThan(Long.valueOf(original.length())));
+            assertThat(ImageProbe.probe(reduced).getColorType(), equalTo(ImageDescriptor.ColorType.PALETTE));
+            assertThat(Integer.valueOf(ImageProbe.probe(reduced).getBitDepth()), equalTo(Integer.valueOf(2)));
+            assertThat(PixelDigest.digest(reduced), equalTo(PixelDigest.digest(original)));
+
+            // Already as small as it gets.
+            assertThat(PngColorReducer.reduce(reduced), equalTo(FALSE));
+
+            // More than 256 colors and translucent.
+            final File safe32 = new File(tmpDir, "safe32_unoptimized.png");
+            FileUtils.copyFile(new File("./src/test/java/com/salesforce/perfeng/uiperf/imageoptimization/utils/safe32_unoptimized.png"), safe32);
+            assertThat(PngColorReducer.reduce(safe32), equalTo(FALSE));
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    /**
+     * Test for {@link PngColorReducer#reduce(File, TransparentPixels)}.
+     *
+     * @throws IOException Can be thrown when interacting with files.
+     */
+    @Test
+    public void testPngColorReducerTransparentPixels() throws IOException {
+        final File tmpDir = Files.createTempDirectory(ImageUtilsTest.class.getName()).toFile();
+        try {
+            // Opaque stripes with noisy colors hidden behind 100% transparent pixels.
+            final BufferedImage hiddenNoise = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+            final Random random = new Random(42);
+            for (int y = 0; y < 128; y++) {
+                for (int x = 0; x < 128; x++) {
+                    hiddenNoise.setRGB(x, y, ((x / 16) % 2 == 0) ? (0xFF000000 | (x << 16) | (y << 8)) : (random.nextInt() & 0x00FFFFFF));
+                }
+            }
+            final File original = new File(tmpDir, "hidden_noise.png");
+            ImageIO.write(hiddenNoise, "png", original);
+
+            final File none = new File(tmpDir, "hidden_noise_none.png");
+            FileUtils.copyFile(original, none);
+            assertThat(PngColorReducer.reduce(none, TransparentPixels.NONE), equalTo(FALSE));
+
+            for (final TransparentPixels transparentPixels : new TransparentPixels[] {TransparentPixels.ZERO, TransparentPixels.PREDICT}) {
+                final File normalized = new File(tmpDir, "hidden_noise_" + transparentPixels + ".png");
+                FileUtils.copyFile(original, normalized);
+                assertThat(PngColorReducer.reduce(normalized, transparentPixels), equalTo(TRUE));
+                assertThat(Long.valueOf(normalized.length()), lessThan(Long.valueOf(original.length())));
+                assertThat(PixelDigest.digest(normalized), equalTo(PixelDigest.digest(original)));
+                assertThat(PngColorReducer.reduce(normalized, transparentPixels), equalTo(FALSE));
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
 }